@@ -0,0 +1,102 @@
+package iri;
+
+import java.io.*;
+import java.net.*;
+import java.nio.charset.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.openjdk.jmh.annotations.*;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ApiBenchmarks { // Kept apart from the other benchmarks, so that they don't depend on the API building
+
+    static final int NUMBER_OF_IDLE_CONNECTIONS = 1000; // Kept open to the API while a single connection sends the measured requests
+
+    @Param({"false", "true"}) // Completion handlers or a thread per connection
+    public boolean virtualThreads;
+
+    Path storageDirectory;
+    final List<Socket> idleConnections = new ArrayList<>(NUMBER_OF_IDLE_CONNECTIONS);
+    Socket socket;
+    byte[] request;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+
+        storageDirectory = Benchmarks.launchStorage();
+
+        final Transaction transaction = new Transaction(Benchmarks.randomTrits(new Random(0), Transaction.SIZE));
+        Storage.storeTransaction(transaction.hash().bytes, transaction, false);
+
+        final String requestBody = "{\"command\": \"getTrytes\", \"hashes\": [\"" + transaction.hash() + "\"]}";
+        request = ("POST / HTTP/1.1\r\nContent-Type: application/json\r\nContent-Length: " + requestBody.length() + "\r\n\r\n" + requestBody).getBytes(StandardCharsets.US_ASCII);
+
+        Configuration.properties.setProperty(Configuration.PROPERTY_PREFIX + "apiVirtualThreads", Boolean.toString(virtualThreads));
+        API.launch();
+
+        for (int i = 0; i < NUMBER_OF_IDLE_CONNECTIONS; i++) {
+
+            idleConnections.add(new Socket(InetAddress.getLoopbackAddress(), API.PORT));
+        }
+        socket = new Socket(InetAddress.getLoopbackAddress(), API.PORT);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+
+        System.out.println(Thread.activeCount() + " threads with " + NUMBER_OF_IDLE_CONNECTIONS + " idle connections");
+
+        socket.close();
+        for (final Socket idleConnection : idleConnections) {
+
+            idleConnection.close();
+        }
+
+        API.shutDown();
+        Benchmarks.shutDownStorage(storageDirectory);
+    }
+
+    @Benchmark
+    public byte[] getTrytes() throws IOException {
+
+        return exchange(socket, request);
+    }
+
+    private static byte[] exchange(final Socket socket, final byte[] request) throws IOException { // Sends a request over a persistent connection and returns the response body
+
+        socket.getOutputStream().write(request);
+
+        final InputStream inputStream = socket.getInputStream();
+        final StringBuilder header = new StringBuilder();
+        while (header.length() < 4 || header.lastIndexOf("\r\n\r\n") != header.length() - 4) {
+
+            final int c = inputStream.read();
+            if (c < 0) {
+
+                throw new EOFException();
+            }
+            header.append((char)c);
+        }
+
+        final int contentLengthOffset = header.indexOf("Content-Length:") + "Content-Length:".length();
+        final byte[] body = new byte[Integer.parseInt(header.substring(contentLengthOffset, header.indexOf("\r\n", contentLengthOffset)).trim())];
+        for (int offset = 0; offset < body.length; ) {
+
+            final int numberOfBytes = inputStream.read(body, offset, body.length - offset);
+            if (numberOfBytes < 0) {
+
+                throw new EOFException();
+            }
+            offset += numberOfBytes;
+        }
+
+        return body;
+    }
+}
@@ -0,0 +1,58 @@
+package iri;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+
+class Benchmarks { // Shared by the JMH benchmarks, which are in "iri" to reach the package-private classes of the node
+
+    static final int NUMBER_OF_TRANSACTIONS = 5000; // The synthetic tangle, every transaction approves two of the 10 preceding ones
+
+    static int[] randomTrits(final Random random, final int size) {
+
+        final int[] trits = new int[size];
+        for (int i = 0; i < size; i++) {
+
+            trits[i] = random.nextInt(3) - 1;
+        }
+
+        return trits;
+    }
+
+    static List<Transaction> syntheticTangle(final Random random, final int numberOfTransactions) {
+
+        final List<Transaction> transactions = new ArrayList<>(numberOfTransactions);
+        for (int i = 0; i < numberOfTransactions; i++) {
+
+            final int[] transactionTrits = randomTrits(random, Transaction.SIZE);
+            System.arraycopy(i == 0 ? Hash.NULL_HASH.trits() : transactions.get(i - 1 - random.nextInt(Math.min(i, 10))).hash().trits(), 0, transactionTrits, Transaction.APPROVED_TRUNK_TRANSACTION_OFFSET, Bastard.HASH_SIZE);
+            System.arraycopy(i == 0 ? Hash.NULL_HASH.trits() : transactions.get(i - 1 - random.nextInt(Math.min(i, 10))).hash().trits(), 0, transactionTrits, Transaction.APPROVED_BRANCH_TRANSACTION_OFFSET, Bastard.HASH_SIZE);
+            transactions.add(new Transaction(transactionTrits));
+        }
+
+        return transactions;
+    }
+
+    static Path launchStorage() throws IOException { // Every fork gets an empty storage of its own
+
+        final Path storageDirectory = Files.createTempDirectory("iri-benchmarks");
+        Configuration.properties.setProperty(Configuration.PROPERTY_PREFIX + "storageDirectory", storageDirectory.toString());
+        Storage.launch();
+
+        return storageDirectory;
+    }
+
+    static void shutDownStorage(final Path storageDirectory) throws IOException {
+
+        Storage.shutDown();
+
+        try (final DirectoryStream<Path> files = Files.newDirectoryStream(storageDirectory)) {
+
+            for (final Path file : files) {
+
+                Files.delete(file);
+            }
+        }
+        Files.delete(storageDirectory);
+    }
+}
@@ -0,0 +1,115 @@
+package iri;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.openjdk.jmh.annotations.*;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(1)
+public class CoreBenchmarks { // Hashing, proof-of-work, conversions and signatures, nothing touches the storage
+
+    @State(Scope.Thread)
+    public static class Trits {
+
+        final Bastard bastard = new Bastard();
+        int[] trits;
+        byte[] bytes;
+        String trytes;
+
+        @Setup
+        public void setUp() {
+
+            final Random random = new Random(0);
+            for (int i = 0; i < Bastard.STATE_SIZE; i++) {
+
+                bastard.state[i] = random.nextInt(3) - 1;
+            }
+
+            trits = Benchmarks.randomTrits(random, Transaction.SIZE);
+            bytes = Converter.bytes(trits);
+            trytes = Converter.trytes(trits);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class ProofOfWork {
+
+        @Param({"7", "9", "11"})
+        public int minWeightMagnitude;
+
+        int[] transactionTrits;
+        int timestamp;
+
+        @Setup
+        public void setUp() {
+
+            transactionTrits = Benchmarks.randomTrits(new Random(0), Transaction.SIZE);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class PrivateKey {
+
+        @Param({"0", "1", "2"}) // From "Signature.LOW_SECURITY_LEVEL" to "Signature.HIGH_SECURITY_LEVEL"
+        public int securityLevel;
+
+        int[][] privateKey;
+
+        @Setup
+        public void setUp() {
+
+            privateKey = Signature.privateKey(Signature.subseed(Benchmarks.randomTrits(new Random(0), Bastard.HASH_SIZE), 0), securityLevel);
+        }
+    }
+
+    @Benchmark
+    public int[] bastardTransform(final Trits state) {
+
+        state.bastard.transform();
+
+        return state.bastard.state;
+    }
+
+    @Benchmark
+    public int[] proofOfWork(final ProofOfWork state) {
+
+        System.arraycopy(Converter.trits(state.timestamp++, Transaction.TIMESTAMP_SIZE), 0, state.transactionTrits, Transaction.TIMESTAMP_OFFSET, Transaction.TIMESTAMP_SIZE); // Otherwise the nonce found first would be found again
+        ProofOfWorkGenerator.doWork(state.transactionTrits, state.minWeightMagnitude);
+
+        return state.transactionTrits;
+    }
+
+    @Benchmark
+    public int[] converterTritsFromBytes(final Trits state) {
+
+        return Converter.trits(state.bytes, Transaction.SIZE);
+    }
+
+    @Benchmark
+    public byte[] converterBytes(final Trits state) {
+
+        return Converter.bytes(state.trits);
+    }
+
+    @Benchmark
+    public String converterTrytes(final Trits state) {
+
+        return Converter.trytes(state.trits);
+    }
+
+    @Benchmark
+    public int[] converterTritsFromTrytes(final Trits state) {
+
+        return Converter.trits(state.trytes);
+    }
+
+    @Benchmark
+    public int[] signaturePublicKey(final PrivateKey state) {
+
+        return Signature.publicKey(state.privateKey);
+    }
+}
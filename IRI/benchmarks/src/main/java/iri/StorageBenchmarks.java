@@ -0,0 +1,107 @@
+package iri;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.openjdk.jmh.annotations.*;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(1)
+public class StorageBenchmarks { // Every benchmark forks its own JVM, so each gets a fresh storage in a temporary directory
+
+    static final int NUMBER_OF_TIPS = 5;
+    static final int NUMBER_OF_ITERATIONS = 4; // Of "storeTransaction", the warm-up one included
+
+    @State(Scope.Benchmark)
+    public static class EmptyStorage {
+
+        Path storageDirectory;
+        List<Transaction> transactions;
+        int nextTransaction;
+
+        @Setup(Level.Trial)
+        public void setUp() throws IOException {
+
+            storageDirectory = Benchmarks.launchStorage();
+            transactions = Benchmarks.syntheticTangle(new Random(0), Benchmarks.NUMBER_OF_TRANSACTIONS * NUMBER_OF_ITERATIONS);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException {
+
+            Benchmarks.shutDownStorage(storageDirectory);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class FilledStorage {
+
+        Path storageDirectory;
+        List<Transaction> transactions;
+        int nextTransaction;
+
+        @Setup(Level.Trial)
+        public void setUp() throws IOException {
+
+            storageDirectory = Benchmarks.launchStorage();
+            transactions = Benchmarks.syntheticTangle(new Random(0), Benchmarks.NUMBER_OF_TRANSACTIONS);
+            for (final Transaction transaction : transactions) {
+
+                Storage.storeTransaction(transaction.hash().bytes, transaction, false);
+            }
+
+            synchronized (TipsSelector.class) {
+
+                TipsSelector.tips.clear();
+                for (int i = Benchmarks.NUMBER_OF_TRANSACTIONS - NUMBER_OF_TIPS; i < Benchmarks.NUMBER_OF_TRANSACTIONS; i++) {
+
+                    TipsSelector.tips.add(transactions.get(i).hash());
+                }
+                TipsSelector.tipsVersion++;
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException {
+
+            Benchmarks.shutDownStorage(storageDirectory);
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 1, batchSize = Benchmarks.NUMBER_OF_TRANSACTIONS)
+    @Measurement(iterations = NUMBER_OF_ITERATIONS - 1, batchSize = Benchmarks.NUMBER_OF_TRANSACTIONS)
+    public long storeTransaction(final EmptyStorage state) { // Time per batch, each stores transactions which aren't in the storage yet
+
+        final Transaction transaction = state.transactions.get(state.nextTransaction++);
+
+        return Storage.storeTransaction(transaction.hash().bytes, transaction, false);
+    }
+
+    @Benchmark
+    public long transactionPointer(final FilledStorage state) {
+
+        return Storage.transactionPointer(state.transactions.get(state.nextTransaction++ % Benchmarks.NUMBER_OF_TRANSACTIONS).hash().bytes);
+    }
+
+    @Benchmark
+    public Object includedTransactions(final FilledStorage state) {
+
+        TipsSelector.tipsVersion++; // Defeats the cache, every call traverses the whole tangle
+
+        return Tangle.includedTransactions();
+    }
+
+    @Benchmark
+    public Object includedTransactionsCached(final FilledStorage state) {
+
+        return Tangle.includedTransactions();
+    }
+}
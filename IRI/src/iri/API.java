@@ -1,10 +1,10 @@
 package iri;
 
-import javax.script.*;
 import java.io.*;
 import java.net.*;
 import java.nio.*;
 import java.nio.channels.*;
+import java.nio.charset.*;
 import java.util.*;
 import java.util.concurrent.*;
 
@@ -17,14 +17,66 @@ class API {
 
     public static final String MAM_COMMANDS_PREFIX = "mam.";
 
-    static ScriptEngine scriptEngine;
+    static AsynchronousChannelGroup channelGroup; // Owns the threads running the completion handlers of "serverChannel" and its connections
     static AsynchronousServerSocketChannel serverChannel;
+    static ServerSocketChannel blockingServerChannel; // Used instead of "serverChannel" when every connection gets its own thread
+
+    static ThreadPoolExecutor lookupsExecutor, graphQueriesExecutor, writesExecutor, proofOfWorkExecutor; // Every command class has its own workers, so lookups don't wait behind heavy commands
+    static final Map<String, Semaphore> commandPermits = new HashMap<>(); // Caps the number of admitted (queued or executed) requests of the listed commands
+
+    static final Queue<Json.Writer> writers = new ConcurrentLinkedQueue<>(); // Responses are written into buffers which return here once sent
+
+    static final byte[] CRLF = {'\r', '\n'}, CRLFCRLF = {'\r', '\n', '\r', '\n'};
 
     static void launch() throws IOException {
 
-        scriptEngine = (new ScriptEngineManager()).getEngineByName("JavaScript");
+        lookupsExecutor = executor("API Lookups Worker", Configuration.apiLookupsWorkers(), Configuration.apiLookupsQueueCapacity());
+        graphQueriesExecutor = executor("API Graph Queries Worker", Configuration.apiGraphQueriesWorkers(), Configuration.apiGraphQueriesQueueCapacity());
+        writesExecutor = executor("API Writes Worker", Configuration.apiWritesWorkers(), Configuration.apiWritesQueueCapacity());
+        proofOfWorkExecutor = executor("API Proof-of-Work Worker", Configuration.apiProofOfWorkWorkers(), Configuration.apiProofOfWorkQueueCapacity());
+        for (final Map.Entry<String, Integer> commandLimit : Configuration.apiCommandLimits().entrySet()) {
+
+            commandPermits.put(commandLimit.getKey(), new Semaphore(commandLimit.getValue()));
+        }
+
+        if (Configuration.apiVirtualThreads()) {
+
+            final ThreadFactory connectionThreadFactory = connectionThreadFactory();
+
+            blockingServerChannel = ServerSocketChannel.open();
+            blockingServerChannel.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), PORT));
+            (new Thread(() -> {
+
+                while (blockingServerChannel.isOpen()) {
+
+                    try {
+
+                        final BlockingConnection connection = new BlockingConnection(blockingServerChannel.accept());
+                        connectionThreadFactory.newThread(connection::serve).start();
 
-        serverChannel = AsynchronousServerSocketChannel.open(AsynchronousChannelGroup.withThreadPool(Executors.newCachedThreadPool()));
+                    } catch (final ClosedChannelException e) {
+
+                        break;
+
+                    } catch (final Exception e) {
+
+                        e.printStackTrace();
+                    }
+                }
+
+            }, "API Acceptor")).start();
+
+            return;
+        }
+
+        channelGroup = AsynchronousChannelGroup.withFixedThreadPool(Runtime.getRuntime().availableProcessors(), runnable -> {
+
+            final Thread thread = new Thread(runnable, "API Channel Handler");
+            thread.setDaemon(true);
+
+            return thread;
+        });
+        serverChannel = AsynchronousServerSocketChannel.open(channelGroup); // Only parses requests and moves bytes, commands are executed by the executors
         serverChannel.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), PORT));
         serverChannel.accept(null, new CompletionHandler<AsynchronousSocketChannel, Void>() {
 
@@ -33,7 +85,7 @@ class API {
 
                 serverChannel.accept(null, this);
 
-                new Request(clientChannel);
+                new AsynchronousConnection(clientChannel);
             }
 
             @Override
@@ -46,126 +98,427 @@ class API {
 
         try {
 
-            serverChannel.close();
+            if (serverChannel != null) {
+
+                serverChannel.close();
+            }
+            if (blockingServerChannel != null) {
+
+                blockingServerChannel.close();
+            }
+            if (channelGroup != null) {
+
+                channelGroup.shutdownNow(); // Also closes the connections still open
+            }
 
         } catch (final Exception e) {
         }
+
+        lookupsExecutor.shutdownNow();
+        graphQueriesExecutor.shutdownNow();
+        writesExecutor.shutdownNow();
+        proofOfWorkExecutor.shutdownNow();
     }
 
-    static String array(final List<String> elements) {
+    static ThreadFactory connectionThreadFactory() { // Virtual threads need Java 21, they are looked up reflectively so older JDKs still build and run the node
+
+        try {
+
+            final Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            final Object builder = builderClass.getMethod("name", String.class, long.class).invoke(Thread.class.getMethod("ofVirtual").invoke(null), "API Connection ", 0L);
+
+            return (ThreadFactory)builderClass.getMethod("factory").invoke(builder);
+
+        } catch (final ReflectiveOperationException e) {
+
+            System.out.println("Virtual threads are not supported, connections will get platform threads");
+
+            return runnable -> {
+
+                final Thread thread = new Thread(runnable, "API Connection");
+                thread.setDaemon(true);
+
+                return thread;
+            };
+        }
+    }
+
+    static ThreadPoolExecutor executor(final String threadName, final int numberOfWorkers, final int queueCapacity) { // Rejects instead of queueing beyond "queueCapacity"
+
+        return new ThreadPoolExecutor(Math.max(1, numberOfWorkers), Math.max(1, numberOfWorkers), 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(Math.max(1, queueCapacity)), runnable -> {
+
+            final Thread thread = new Thread(runnable, threadName);
+            thread.setDaemon(true);
+
+            return thread;
+        });
+    }
+
+    static ThreadPoolExecutor executor(final String command) {
+
+        if (command != null) {
 
-        String array = "";
-        for (int i = 0; i < elements.size(); i++) {
+            switch (command) {
+
+                case "attachToTangle":
+                case "replayTransfer":
+                case "transfer": {
+
+                    return proofOfWorkExecutor;
+                }
 
-            if (i > 0) {
+                case "getBundle":
+                case "getNewAddress":
+                case "getPublicKey":
+                case "getTransactionsToApprove":
+                case "getTransfers":
+                case "prepareTransfers": {
 
-                array += ", ";
+                    return graphQueriesExecutor;
+                }
+
+                case "broadcastTransactions":
+                case "storeTransactions": { // Hold the storage write lock or wait for room in the broadcast queue
+
+                    return writesExecutor;
+                }
             }
+        }
+
+        return lookupsExecutor;
+    }
+
+    static Json.Writer writer() {
+
+        final Json.Writer writer = writers.poll();
+
+        return (writer == null ? new Json.Writer() : writer).clear();
+    }
 
-            array += elements.get(i);
+    static void release(final Json.Writer writer) { // A writer grown by a big response is dropped rather than pinning its buffer in the pool
+
+        if (writer.capacity() <= Json.Writer.INITIAL_CAPACITY) {
+
+            writers.offer(writer);
         }
+    }
 
-        return "[" + array + "]";
+    static String array(final List<String> elements) {
+
+        return "[" + String.join(", ", elements) + "]";
     }
 
-    static class Request {
+    static abstract class Connection { // Persistent, requests are parsed as their bytes arrive and are answered in the order they were pipelined
 
         static final int READING_BUFFER_SIZE = 4096;
 
-        final AsynchronousSocketChannel channel;
-        ByteBuffer buffer;
-        final ByteArrayOutputStream accumulatedData;
+        final int maxRequestSize = Configuration.apiMaxRequestSize();
 
-        Request(final AsynchronousSocketChannel channel) {
+        byte[] data = new byte[READING_BUFFER_SIZE]; // Grows up to "maxRequestSize", shrinks back once drained
+        int requestOffset, dataEnd; // The bytes between them have been received but not consumed yet
+        int scannedEnd; // The search for the end of the headers resumes here
 
-            this.channel = channel;
-            buffer = ByteBuffer.allocateDirect(READING_BUFFER_SIZE);
-            accumulatedData = new ByteArrayOutputStream();
+        int headersEnd = -1; // Negative until the headers of the current request have arrived
+        int contentLength;
+        boolean chunked, trailers, keepAlive;
+        int chunkOffset, bodyEnd; // Chunked bodies are decoded in place, "bodyEnd" trails "chunkOffset"
+        boolean tooLarge; // Set as soon as the current request is known not to fit into "maxRequestSize"
 
-            channel.read(buffer, this, new CompletionHandler<Integer, Request>() {
+        boolean makeRoom() { // False if the request is too big, it has been answered then
 
-                @Override
-                public void completed(final Integer numberOfBytes, final Request request) {
+            if (dataEnd == data.length && !tooLarge) {
 
-                    try {
+                if (requestOffset > 0) {
 
-                        if (numberOfBytes >= 0) {
+                    compact();
 
-                            buffer.flip();
-                            final byte[] bufferBytes = new byte[buffer.remaining()];
-                            buffer.get(bufferBytes);
-                            accumulatedData.write(bufferBytes, 0, bufferBytes.length);
-                            final String requestString = accumulatedData.toString();
+                } else if (data.length < maxRequestSize) {
 
-                            final int crlfcrlfOffset = requestString.indexOf("\r\n\r\n");
-                            if (crlfcrlfOffset >= 0) {
+                    data = Arrays.copyOf(data, Math.min(data.length * 2, maxRequestSize));
 
-                                final int contentLengthOffset = requestString.indexOf("Content-Length:");
-                                if (contentLengthOffset >= 0) {
+                } else {
 
-                                    final int contentLengthCRLFOffset = requestString.indexOf("\r\n", contentLengthOffset);
-                                    if (contentLengthCRLFOffset >= 0) {
+                    tooLarge = true;
+                }
+            }
 
-                                        final String body = requestString.substring(crlfcrlfOffset + 4);
-                                        final int contentLengthValue = Integer.parseInt(requestString.substring(contentLengthOffset + 15, contentLengthCRLFOffset).trim());
-                                        if (body.length() == contentLengthValue) {
+            if (tooLarge) {
 
-                                            process(body);
+                respondWithError("413 Payload Too Large", "Requests can't exceed " + maxRequestSize + " bytes");
 
-                                            return;
-                                        }
-                                    }
-                                }
-                            }
+                return false;
+            }
 
-                            buffer.clear();
-                            channel.read(buffer, request, this);
+            return true;
+        }
 
-                        } else {
+        byte[] header(final String status, final int contentLength) {
 
-                            channel.close();
-                        }
+            return ("HTTP/1.1 " + status + "\r\nAccess-Control-Allow-Origin: *\r\nContent-Type: application/json; charset=utf-8\r\nContent-Length: " + contentLength + "\r\nConnection: " + (keepAlive ? "keep-alive" : "close") + "\r\n\r\n").getBytes(StandardCharsets.US_ASCII);
+        }
 
-                    } catch (final Exception e) {
+        abstract void respond(final String status, final Json.Writer writer);
 
-                        e.printStackTrace();
+        abstract void close();
+
+        String nextBody() {
+
+            if (headersEnd < 0) {
+
+                final int crlfcrlfOffset = indexOf(CRLFCRLF, Math.max(scannedEnd, requestOffset));
+                if (crlfcrlfOffset < 0) {
+
+                    scannedEnd = Math.max(requestOffset, dataEnd - (CRLFCRLF.length - 1));
+
+                    return null;
+                }
+
+                parseHeaders(new String(data, requestOffset, crlfcrlfOffset - requestOffset, StandardCharsets.ISO_8859_1));
+                headersEnd = chunkOffset = bodyEnd = crlfcrlfOffset + CRLFCRLF.length;
+            }
+
+            if (!chunked) {
+
+                return dataEnd - headersEnd < contentLength ? null : consume(headersEnd + contentLength, headersEnd + contentLength);
+            }
 
-                        try {
+            while (true) {
 
-                            channel.close();
+                final int crlfOffset = indexOf(CRLF, chunkOffset);
+                if (crlfOffset < 0) {
+
+                    return null;
+                }
+
+                if (trailers) { // Trailer fields are ignored, an empty line ends the request
+
+                    if (crlfOffset == chunkOffset) {
+
+                        return consume(crlfOffset + CRLF.length, bodyEnd);
+                    }
+                    chunkOffset = crlfOffset + CRLF.length;
+
+                } else {
+
+                    final String chunkSizeLine = new String(data, chunkOffset, crlfOffset - chunkOffset, StandardCharsets.ISO_8859_1);
+                    final int extensionsOffset = chunkSizeLine.indexOf(';');
+                    final int chunkSize = Integer.parseInt((extensionsOffset < 0 ? chunkSizeLine : chunkSizeLine.substring(0, extensionsOffset)).trim(), 16);
+                    if (chunkSize < 0) {
+
+                        throw new IllegalArgumentException("Illegal chunk size: " + chunkSizeLine);
+                    }
 
-                        } catch (final Exception e2) {
+                    if (chunkSize == 0) {
 
-                            e2.printStackTrace();
+                        trailers = true;
+                        chunkOffset = crlfOffset + CRLF.length;
+
+                    } else if (chunkSize > maxRequestSize - (crlfOffset + CRLF.length - requestOffset) - CRLF.length) { // Checked before "chunkEnd" is computed, it would overflow for sizes like 7fffffff
+
+                        tooLarge = true;
+
+                        return null;
+
+                    } else {
+
+                        final int chunkEnd = crlfOffset + CRLF.length + chunkSize;
+                        if (dataEnd - chunkEnd < CRLF.length) {
+
+                            return null;
+                        }
+                        if (data[chunkEnd] != '\r' || data[chunkEnd + 1] != '\n') {
+
+                            throw new IllegalArgumentException("Chunk isn't terminated by CRLF");
                         }
+
+                        System.arraycopy(data, crlfOffset + CRLF.length, data, bodyEnd, chunkSize);
+                        bodyEnd += chunkSize;
+                        chunkOffset = chunkEnd + CRLF.length;
                     }
                 }
+            }
+        }
+
+        void parseHeaders(final String headers) {
+
+            final String[] lines = headers.split("\r\n");
+            final String[] requestLine = lines[0].split(" ");
+            if (requestLine.length != 3 || !requestLine[2].startsWith("HTTP/1.")) {
+
+                throw new IllegalArgumentException("Malformed request line: " + lines[0]);
+            }
+
+            keepAlive = !requestLine[2].equals("HTTP/1.0");
+            contentLength = 0;
+            chunked = false;
+            trailers = false;
+
+            for (int i = 1; i < lines.length; i++) {
+
+                final int colonOffset = lines[i].indexOf(':');
+                if (colonOffset < 0) {
+
+                    throw new IllegalArgumentException("Malformed header: " + lines[i]);
+                }
 
-                @Override
-                public void failed(final Throwable e, final Request request) {
+                final String value = lines[i].substring(colonOffset + 1).trim();
+                switch (lines[i].substring(0, colonOffset).trim().toLowerCase()) {
 
-                    e.printStackTrace();
+                    case "content-length": {
+
+                        contentLength = Integer.parseInt(value);
+                        if (contentLength < 0) {
+
+                            throw new IllegalArgumentException("Illegal Content-Length: " + value);
+                        }
+
+                    } break;
+
+                    case "transfer-encoding": {
+
+                        chunked = value.toLowerCase().endsWith("chunked");
+
+                    } break;
+
+                    case "connection": {
+
+                        if (value.equalsIgnoreCase("close")) {
+
+                            keepAlive = false;
+
+                        } else if (value.equalsIgnoreCase("keep-alive")) {
+
+                            keepAlive = true;
+                        }
+
+                    } break;
+                }
+            }
+        }
+
+        String consume(final int requestEnd, final int bodyEnd) {
+
+            final String body = new String(data, headersEnd, bodyEnd - headersEnd, StandardCharsets.UTF_8);
+
+            requestOffset = scannedEnd = requestEnd;
+            headersEnd = -1;
+            if (requestOffset == dataEnd) {
+
+                requestOffset = dataEnd = scannedEnd = 0;
+                if (data.length > READING_BUFFER_SIZE) {
+
+                    data = new byte[READING_BUFFER_SIZE];
+                }
+            }
+
+            return body;
+        }
+
+        void compact() {
+
+            System.arraycopy(data, requestOffset, data, 0, dataEnd - requestOffset);
+            dataEnd -= requestOffset;
+            scannedEnd -= requestOffset;
+            if (headersEnd >= 0) {
+
+                headersEnd -= requestOffset;
+                chunkOffset -= requestOffset;
+                bodyEnd -= requestOffset;
+            }
+            requestOffset = 0;
+        }
+
+        int indexOf(final byte[] pattern, final int fromOffset) {
+
+            for (int i = fromOffset; i <= dataEnd - pattern.length; i++) {
+
+                int j = 0;
+                while (j < pattern.length && data[i + j] == pattern[j]) {
+
+                    j++;
+                }
+                if (j == pattern.length) {
+
+                    return i;
+                }
+            }
+
+            return -1;
+        }
+
+        void respondWithError(final String status, final String message) { // The connection can't be trusted to be in sync anymore, so it's closed afterwards
+
+            keepAlive = false;
+
+            respond(status, writer().beginObject().name("error").value(message).endObject());
+        }
+
+        void process(final String requestString) {
+
+            final Map<String, Object> request;
+            try {
+
+                request = Json.parse(requestString, "trytes");
+
+            } catch (final Exception e) {
+
+                e.printStackTrace();
+
+                respond("200 OK", writer().beginObject().name("exception").value(e.toString()).endObject());
+
+                return;
+            }
+
+            final String command = request.get("command") instanceof String ? (String)request.get("command") : null;
+            final Semaphore permits = command == null ? null : commandPermits.get(command);
+            if (permits != null && !permits.tryAcquire()) {
+
+                respondWithRejection(command);
+
+                return;
+            }
+
+            try {
+
+                executor(command).execute(() -> {
 
                     try {
 
-                        channel.close();
+                        execute(request);
 
-                    } catch (final Exception e2) {
+                    } finally {
 
-                        e2.printStackTrace();
+                        if (permits != null) {
+
+                            permits.release();
+                        }
                     }
+                });
+
+            } catch (final RejectedExecutionException e) {
+
+                if (permits != null) {
+
+                    permits.release();
                 }
-            });
+
+                respondWithRejection(command);
+            }
+        }
+
+        void respondWithRejection(final String command) { // Unlike after the other errors the connection stays in sync, so it's kept alive
+
+            respond("503 Service Unavailable", writer().beginObject().name("error").value("Too many '" + command + "' requests, try again later").endObject());
         }
 
-        void process(final String requestString) throws UnsupportedEncodingException {
+        void execute(final Map<String, Object> request) {
+
+            final Json.Writer writer = writer().beginObject();
 
             String response;
 
             try {
 
-                final Map<String, Object> request = (Map<String, Object>)scriptEngine.eval("Java.asJSONCompatible(" + requestString + ");");
-
                 final String command = (String)request.get("command");
                 if (command == null) {
 
@@ -177,13 +530,14 @@ class API {
 
                         case "analyzeTransactions": {
 
-                            final List<String> elements = new LinkedList<>();
-                            for (final String trytes : (List<String>)request.get("trytes")) {
+                            writer.name("transactions").beginArray();
+                            for (final byte[] transactionBytes : (List<byte[]>)request.get("trytes")) {
 
-                                elements.add("{" + new Transaction(Converter.bytes(Converter.trits(trytes))) + "}");
+                                writer.raw("{" + new Transaction(transactionBytes) + "}");
                             }
+                            writer.endArray();
 
-                            response = "\"transactions\": " + array(elements);
+                            response = "";
 
                         } break;
 
@@ -196,10 +550,10 @@ class API {
                             final List<Transaction> transactions = new LinkedList<>();
 
                             Hash prevTransaction = null;
-                            final List<String> trytes = (List<String>)request.get("trytes");
+                            final List<byte[]> trytes = (List<byte[]>)request.get("trytes");
                             for (int i = 0; i < trytes.size(); i++) {
 
-                                final int[] transactionTrits = Converter.trits(trytes.get(i));
+                                final int[] transactionTrits = Converter.trits(trytes.get(i), Transaction.SIZE);
                                 System.arraycopy((prevTransaction == null ? trunkTransactionToApprove : prevTransaction).trits(), 0, transactionTrits, Transaction.APPROVED_TRUNK_TRANSACTION_TRINARY_OFFSET, Transaction.APPROVED_TRUNK_TRANSACTION_TRINARY_SIZE);
                                 System.arraycopy((prevTransaction == null ? branchTransactionToApprove : trunkTransactionToApprove).trits(), 0, transactionTrits, Transaction.APPROVED_BRANCH_TRANSACTION_TRINARY_OFFSET, Transaction.APPROVED_BRANCH_TRANSACTION_TRINARY_SIZE);
 
@@ -210,23 +564,25 @@ class API {
                                 prevTransaction = new Hash(transaction.hash, 0, Transaction.HASH_SIZE);
                             }
 
-                            final List<String> elements = new LinkedList<>();
+                            writer.name("trytes").beginArray();
                             for (int i = transactions.size(); i-- > 0; ) {
 
-                                elements.add("\"" + Converter.trytes(transactions.get(i).trits()) + "\"");
+                                writer.trytes(transactions.get(i).bytes, 0, Transaction.SIZE);
                             }
+                            writer.endArray();
 
-                            response = "\"trytes\": " + array(elements);
+                            response = "";
 
                         } break;
 
                         case "broadcastTransactions": {
 
-                            for (final String trytes : (List<String>)request.get("trytes")) {
+                            final List<byte[]> bundle = new ArrayList<>();
+                            for (final byte[] transactionBytes : (List<byte[]>)request.get("trytes")) {
 
-                                final Transaction transaction = new Transaction(Converter.bytes(Converter.trits(trytes)));
-                                Broadcaster.broadcast(transaction.bytes);
+                                bundle.add(Arrays.copyOf(transactionBytes, Transaction.SIZE_IN_BYTES));
                             }
+                            Broadcaster.push(bundle);
 
                             response = "";
 
@@ -304,13 +660,14 @@ class API {
                                 foundTransactions.retainAll(approveeTransactions);
                             }
 
-                            final List<String> elements = new LinkedList<>();
+                            writer.name("hashes").beginArray();
                             for (final long pointer : foundTransactions) {
 
-                                elements.add("\"" + new Hash(Storage.loadTransaction(pointer).hash, 0, Transaction.HASH_SIZE) + "\"");
+                                writer.value(new Hash(Storage.loadTransaction(pointer).hash, 0, Storage.Transaction.HASH_SIZE));
                             }
+                            writer.endArray();
 
-                            response = "\"hashes\": " + array(elements);
+                            response = "";
 
                         } break;
 
@@ -392,11 +749,7 @@ class API {
                             final Hash seed = new Hash((String)request.get("seed"));
                             final int securityLevel = (Integer)request.get("securityLevel");
 
-                            final int index = Utils.newAddressIndex(seed, securityLevel);
-                            final int[] subseed = Signature.subseed(seed.trits(), index);
-                            final int[][] privateKey = Signature.privateKey(subseed, securityLevel);
-                            final int[] publicKey = Signature.publicKey(privateKey);
-                            final Hash address = Signature.address(publicKey);
+                            final Hash address = Utils.address(seed, securityLevel, Utils.newAddressIndex(seed, securityLevel));
 
                             response = "\"address\": \"" + address + "\"";
 
@@ -406,6 +759,10 @@ class API {
 
                             response = "\"appName\": \"" + IRI.NAME + "\""
                                     + ", \"appVersion\": \"" + IRI.VERSION + "\""
+                                    + ", \"backpressuredPackets\": " + Node.numberOfBackpressuredPackets.sum()
+                                    + ", \"broadcastQueue\": " + Broadcaster.queueDepth()
+                                    + ", \"broadcastRate\": " + Broadcaster.sendRate
+                                    + ", \"droppedPackets\": " + Node.numberOfDroppedPackets.sum()
                                     + ", \"incomingPacketsBacklog\": " + Node.envelopes.size()
                                     + ", \"jreAvailableProcessors\": " + Runtime.getRuntime().availableProcessors()
                                     + ", \"jreFreeMemory\": " + Runtime.getRuntime().freeMemory()
@@ -436,13 +793,14 @@ class API {
 
                         case "getTips": {
 
-                            final List<String> elements = new LinkedList<>();
+                            writer.name("hashes").beginArray();
                             for (final Hash tip : Storage.tips()) {
 
-                                elements.add("\"" + tip + "\"");
+                                writer.value(tip);
                             }
+                            writer.endArray();
 
-                            response = "\"hashes\": " + array(elements);
+                            response = "";
 
                         } break;
 
@@ -563,7 +921,7 @@ class API {
                                     long value = 0;
                                     for (final Transaction transaction : bundle.transactions.get(bestInstance)) {
 
-                                        if (addresses.contains(new Hash(transaction.address, 0, Transaction.ADDRESS_SIZE))) {
+                                        if (addresses.contains(transaction.address())) {
 
                                             value += transaction.value;
                                         }
@@ -573,7 +931,7 @@ class API {
                                     boolean severalAddresses = false;
                                     for (final Transaction transaction : bundle.transactions.get(bestInstance)) {
 
-                                        final Hash transactionAddress = new Hash(transaction.address, 0, Transaction.ADDRESS_SIZE);
+                                        final Hash transactionAddress = transaction.address();
                                         if (value > 0) {
 
                                             if (transaction.value < 0 && !addresses.contains(transactionAddress)) {
@@ -628,15 +986,22 @@ class API {
 
                         case "getTrytes": {
 
-                            final List<String> elements = new LinkedList<>();
-
+                            writer.name("trytes").beginArray();
                             for (final String hash : (List<String>)request.get("hashes")) {
 
-                                final Transaction transaction = Storage.loadTransaction((new Hash(hash)).bytes);
-                                elements.add(transaction == null ? "null" : ("\"" + Converter.trytes(transaction.trits()) + "\""));
+                                final Storage.Transaction transaction = Storage.loadTransaction((new Hash(hash)).bytes);
+                                if (transaction == null) {
+
+                                    writer.value((Object)null);
+
+                                } else {
+
+                                    writer.trytes(transaction.bytes, 0, Transaction.SIZE);
+                                }
                             }
+                            writer.endArray();
 
-                            response = "\"trytes\": " + array(elements);
+                            response = "";
 
                         } break;
 
@@ -706,20 +1071,21 @@ class API {
                                 }
                                 if (requiredTotalValue < availableTotalValue) {
 
-                                    bundleEntries.add(new Utils.BundleEntry(new int[Transaction.SIGNATURE_MESSAGE_CHUNK_TRINARY_SIZE], Signature.address(Signature.publicKey(Signature.privateKey(Signature.subseed(seed.trits(), Utils.newAddressIndex(seed, securityLevel)), securityLevel))), availableTotalValue - requiredTotalValue, timestamp));
+                                    bundleEntries.add(new Utils.BundleEntry(new int[Transaction.SIGNATURE_MESSAGE_CHUNK_TRINARY_SIZE], Utils.address(seed, securityLevel, Utils.newAddressIndex(seed, securityLevel)), availableTotalValue - requiredTotalValue, timestamp));
                                 }
                                 for (final Map.Entry<Integer, Long> usedSource : usedSources.entrySet()) {
 
                                     bundleEntries.add(new Utils.BundleEntry(Signature.privateKey(Signature.subseed(seed.trits(), usedSource.getKey()), securityLevel), Hash.NULL_HASH, -usedSource.getValue(), timestamp));
                                 }
 
-                                final List<String> elements = new LinkedList<>();
+                                writer.name("trytes").beginArray();
                                 for (final Transaction transaction : Utils.generateBundle(bundleEntries, Hash.NULL_HASH, Hash.NULL_HASH, 0)) {
 
-                                    elements.add("\"" + Converter.trytes(transaction.trits()) + "\"");
+                                    writer.trytes(transaction.bytes, 0, Transaction.SIZE);
                                 }
+                                writer.endArray();
 
-                                response = "\"trytes\": " + array(elements);
+                                response = "";
                             }
 
                         } break;
@@ -749,7 +1115,7 @@ class API {
 
                                         final Transaction transaction = bundle.transactions.get(0).get(i);
 
-                                        final Hash address = new Hash(transaction.address, 0, Transaction.ADDRESS_SIZE);
+                                        final Hash address = transaction.address();
                                         final Long value = addressesToSpend.get(address);
                                         addressesToSpend.put(address, value == null ? -transaction.value : (value - transaction.value));
 
@@ -780,12 +1146,14 @@ class API {
 
                                         } else {
 
+                                            final List<byte[]> transactionsBytes = new ArrayList<>(newTransactions.length);
                                             for (int i = newTransactions.length; i-- > 0; ) { // Broadcast from the head to the tail
 
                                                 final Transaction transaction = newTransactions[i];
                                                 Storage.storeTransaction(transaction.hash, transaction, false);
-                                                Broadcaster.broadcast(transaction.bytes);
+                                                transactionsBytes.add(transaction.bytes);
                                             }
+                                            Broadcaster.push(transactionsBytes);
 
                                             response = "\"neighbors\": " + Node.nodes.size() + ", \"warning\": \"This API command will be removed soon\"";
                                         }
@@ -820,11 +1188,12 @@ class API {
 
                         case "storeTransactions": {
 
-                            for (final String trytes : (List<String>)request.get("trytes")) {
+                            final List<Transaction> transactions = new ArrayList<>();
+                            for (final byte[] transactionBytes : (List<byte[]>)request.get("trytes")) {
 
-                                final Transaction transaction = new Transaction(Converter.bytes(Converter.trits(trytes)));
-                                Storage.storeTransaction(transaction.hash, transaction, false);
+                                transactions.add(new Transaction(transactionBytes));
                             }
+                            Storage.storeTransactions(transactions);
 
                             response = "";
 
@@ -927,62 +1296,245 @@ class API {
 
                 e.printStackTrace();
 
-                response = "\"exception\": \"" + e.toString().replaceAll("\"", "'").replace("\r", "\\r").replace("\n", "\\n") + "\"";
+                writer.clear().beginObject().name("exception").value(e.toString());
+                response = "";
             }
 
-            response = "{" + response + "}";
-            response = "HTTP/1.1 200 OK\r\nAccess-Control-Allow-Origin: *\r\nContent-Type: application/json; charset=utf-8\r\nContent-Length: " + response.getBytes("UTF-8").length + "\r\nConnection: close\r\n\r\n" + response;
-            final byte[] responseBytes = response.getBytes("UTF-8");
-            buffer = ByteBuffer.allocateDirect(responseBytes.length);
-            buffer.put(responseBytes);
-            buffer.flip();
-            channel.write(buffer, this, new CompletionHandler<Integer, Request>() {
+            respond("200 OK", writer.raw(response).endObject());
+        }
+
+        private static int[][] privateKey(final String privateKeyTrytes) {
+
+            if (privateKeyTrytes.length() == 0 || privateKeyTrytes.length() > 81 || privateKeyTrytes.length() % 27 != 0) {
+
+                return null;
+            }
+
+            final int[][] privateKey = new int[privateKeyTrytes.length() / 27][];
+            for (int i = 0; i < privateKey.length; i++) {
+
+                privateKey[i] = Converter.trits(privateKeyTrytes.substring(i * 27, (i + 1) * 27));
+            }
+
+            return privateKey;
+        }
+    }
+
+    static class AsynchronousConnection extends Connection { // Driven by completion handlers, no thread waits for an idle connection
+
+        final AsynchronousSocketChannel channel;
+
+        AsynchronousConnection(final AsynchronousSocketChannel channel) {
+
+            this.channel = channel;
+
+            read();
+        }
+
+        void read() {
+
+            if (!makeRoom()) {
+
+                return;
+            }
+
+            channel.read(ByteBuffer.wrap(data, dataEnd, data.length - dataEnd), Configuration.apiKeepAliveTimeout(), TimeUnit.MILLISECONDS, this, new CompletionHandler<Integer, AsynchronousConnection>() {
 
                 @Override
-                public void completed(final Integer numberOfBytes, final Request request) {
+                public void completed(final Integer numberOfBytes, final AsynchronousConnection connection) {
 
-                    if (buffer.hasRemaining()) {
+                    if (numberOfBytes < 0) {
 
-                        channel.write(buffer, request, this);
+                        close();
 
                     } else {
 
-                        try {
+                        dataEnd += numberOfBytes;
 
-                            channel.close();
+                        next();
+                    }
+                }
+
+                @Override
+                public void failed(final Throwable e, final AsynchronousConnection connection) { // Idle timeouts and resets are routine for persistent connections
+
+                    close();
+                }
+            });
+        }
+
+        void next() { // Processes the next request if it has fully arrived, otherwise waits for more bytes
+
+            final String body;
+            try {
 
-                        } catch (final Exception e) {
+                body = nextBody();
+
+            } catch (final IllegalArgumentException e) {
+
+                respondWithError("400 Bad Request", e.getMessage());
+
+                return;
+            }
+
+            if (body == null) {
+
+                read();
+
+            } else {
+
+                process(body);
+            }
+        }
+
+        @Override
+        void respond(final String status, final Json.Writer writer) {
+
+            final ByteBuffer body = writer.buffer();
+            final ByteBuffer[] buffers = {ByteBuffer.wrap(header(status, body.remaining())), body};
+            channel.write(buffers, 0, buffers.length, 0, TimeUnit.MILLISECONDS, this, new CompletionHandler<Long, AsynchronousConnection>() {
+
+                @Override
+                public void completed(final Long numberOfBytes, final AsynchronousConnection connection) {
+
+                    if (body.hasRemaining()) {
+
+                        channel.write(buffers, 0, buffers.length, 0, TimeUnit.MILLISECONDS, connection, this);
+
+                    } else {
+
+                        release(writer);
+
+                        if (keepAlive) {
+
+                            next();
+
+                        } else {
+
+                            close();
                         }
                     }
                 }
 
                 @Override
-                public void failed(final Throwable e, final Request request) {
+                public void failed(final Throwable e, final AsynchronousConnection connection) {
+
+                    release(writer);
+
+                    close();
+                }
+            });
+        }
+
+        @Override
+        void close() {
+
+            try {
+
+                channel.close();
+
+            } catch (final Exception e) {
+            }
+        }
+    }
+
+    static class BlockingConnection extends Connection { // Served by its own (ideally virtual) thread with blocking reads and writes
+
+        final SocketChannel channel;
+        final InputStream inputStream;
+        final Semaphore responses = new Semaphore(0); // Released once a response has been written, which may happen on a worker thread
+
+        BlockingConnection(final SocketChannel channel) throws IOException {
+
+            this.channel = channel;
+            channel.socket().setSoTimeout((int)Configuration.apiKeepAliveTimeout());
+            inputStream = channel.socket().getInputStream(); // Unlike the channel honors the timeout
+        }
+
+        void serve() {
 
+            try {
+
+                while (true) {
+
+                    final String body;
                     try {
 
-                        channel.close();
+                        body = nextBody();
+
+                    } catch (final IllegalArgumentException e) {
+
+                        respondWithError("400 Bad Request", e.getMessage());
+                        responses.acquireUninterruptibly();
+
+                        break;
+                    }
+
+                    if (body == null) {
+
+                        if (!makeRoom()) {
+
+                            responses.acquireUninterruptibly();
 
-                    } catch (final Exception e2) {
+                            break;
+                        }
+
+                        final int numberOfBytes = inputStream.read(data, dataEnd, data.length - dataEnd);
+                        if (numberOfBytes < 0) {
+
+                            break;
+                        }
+                        dataEnd += numberOfBytes;
+
+                    } else {
+
+                        process(body);
+                        responses.acquireUninterruptibly();
+                        if (!keepAlive || !channel.isOpen()) {
+
+                            break;
+                        }
                     }
                 }
-            });
-        }
 
-        private static int[][] privateKey(final String privateKeyTrytes) {
+            } catch (final IOException e) { // Idle timeouts and resets are routine for persistent connections
 
-            if (privateKeyTrytes.length() == 0 || privateKeyTrytes.length() > 81 || privateKeyTrytes.length() % 27 != 0) {
+            } finally {
 
-                return null;
+                close();
             }
+        }
 
-            final int[][] privateKey = new int[privateKeyTrytes.length() / 27][];
-            for (int i = 0; i < privateKey.length; i++) {
+        @Override
+        void respond(final String status, final Json.Writer writer) {
 
-                privateKey[i] = Converter.trits(privateKeyTrytes.substring(i * 27, (i + 1) * 27));
+            final ByteBuffer body = writer.buffer();
+            final ByteBuffer[] buffers = {ByteBuffer.wrap(header(status, body.remaining())), body};
+            try {
+
+                while (body.hasRemaining()) {
+
+                    channel.write(buffers);
+                }
+
+            } catch (final IOException e) {
+
+                close();
             }
 
-            return privateKey;
+            release(writer);
+            responses.release();
+        }
+
+        @Override
+        void close() {
+
+            try {
+
+                channel.close();
+
+            } catch (final Exception e) {
+            }
         }
     }
 }
@@ -4,29 +4,64 @@ public class Bastard {
 
     public static final int HASH_SIZE = 243;
     public static final int STATE_SIZE = 3 * HASH_SIZE;
+    public static final int NUMBER_OF_ROUNDS = 9;
     public static final int[] F = {1, -1, 0, 0, 1, 0, -1, 0, 1, 0, 1, 0, -1, 0, 1, 1, -1, -1, -1, 0, 1, 1, -1, -1, -1, 1, 0};
 
+    private static final int[][] BETA_INDICES = new int[NUMBER_OF_ROUNDS][STATE_SIZE], GAMMA_INDICES = new int[NUMBER_OF_ROUNDS][STATE_SIZE];
+
+    private static final int[] ZEROED_STATE = new int[STATE_SIZE];
+
+    private static final ThreadLocal<Bastard> bastards = ThreadLocal.withInitial(Bastard::new); // Used by the static methods, so they don't allocate a sponge per call
+
+    static {
+
+        int div = HASH_SIZE;
+        for (int r = 0; r < NUMBER_OF_ROUNDS; r++) {
+
+            if (div == 0) div = HASH_SIZE;
+
+            for (int i = 0; i < STATE_SIZE; i++) {
+
+                BETA_INDICES[r][i] = (i + div) % STATE_SIZE;
+                GAMMA_INDICES[r][i] = (i + div + div) % STATE_SIZE;
+            }
+
+            div /= 3;
+        }
+    }
+
     public final int[] state = new int[STATE_SIZE], stateCopy = new int[STATE_SIZE];
 
     public static Hash hash(final int[] input, int offset, int size) {
 
-        final Bastard bastard = new Bastard();
+        final Bastard bastard = bastards.get();
+        bastard.reset();
         bastard.absorb(input, offset, size);
 
         return bastard.hash();
     }
 
+    public static void hash(final int[] input, final int offset, final int size, final int[] destination, final int destinationOffset) { // "destination" may overlap "input"
+
+        final Bastard bastard = bastards.get();
+        bastard.reset();
+        bastard.absorb(input, offset, size);
+        bastard.digest(destination, destinationOffset);
+    }
+
     Hash hash() {
 
         return new Hash(state);
     }
 
-    void reset() {
+    public void digest(final int[] destination, final int destinationOffset) { // Unlike "squeeze" doesn't transform the state afterwards
 
-        for (int i = 0; i < state.length; i++) {
+        System.arraycopy(state, 0, destination, destinationOffset, HASH_SIZE);
+    }
 
-            state[i] = 0;
-        }
+    void reset() {
+
+        System.arraycopy(ZEROED_STATE, 0, state, 0, STATE_SIZE);
     }
 
     public void absorb(final int[] input, int offset, int size) {
@@ -49,26 +84,22 @@ public class Bastard {
         transform();
     }
 
-    public void transform() {
-
-        int div = HASH_SIZE;
-        for (int r = 0; r < 9; r++) {
+    public void transform() { // Rounds alternate between the two buffers, an odd number of them leaves the result in "state"
 
-            if (div == 0) div = HASH_SIZE;
+        System.arraycopy(state, 0, stateCopy, 0, STATE_SIZE);
 
-            System.arraycopy(state, 0, stateCopy, 0, STATE_SIZE);
+        int[] source = stateCopy, destination = state;
+        for (int r = 0; r < NUMBER_OF_ROUNDS; r++) {
 
+            final int[] betaIndices = BETA_INDICES[r], gammaIndices = GAMMA_INDICES[r];
             for (int i = 0; i < STATE_SIZE; i++) {
 
-                state[i] = f(stateCopy[i], stateCopy[(i + div) % STATE_SIZE], stateCopy[(i + div + div) % STATE_SIZE]);
+                destination[i] = F[source[i] + source[betaIndices[i]] * 3 + source[gammaIndices[i]] * 9 + 13];
             }
 
-            div /= 3;
+            final int[] buffer = source;
+            source = destination;
+            destination = buffer;
         }
     }
-
-    private static int f(final int a, final int b, final int c) {
-
-        return F[a + b * 3 + c * 9 + 13];
-    }
 }
@@ -1,27 +1,58 @@
 package iri;
 
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class Broadcaster {
 
-    public static final int PAUSE_BETWEEN_TRANSACTIONS = 1000;
+    public static final int SEND_RATE_MEASUREMENT_PERIOD = 1000;
 
     private static boolean shuttingDown;
 
-    private static final BlockingQueue<byte[]> transactionsBytes = new LinkedBlockingQueue<>();
+    private static final BlockingQueue<List<byte[]>> bundles = new LinkedBlockingQueue<>(Math.max(1, Configuration.broadcastQueueCapacity())); // Transactions of a bundle are queued together to leave back to back
+    private static final AtomicInteger numberOfQueuedTransactions = new AtomicInteger();
+
+    private static final double packetsPerSecond = Math.max(1, Configuration.broadcastPacketsPerSecond()); // Budget of every neighbour
+    private static final double bucketCapacity = Math.max(packetsPerSecond, Configuration.broadcastBurst()); // Bursts of up to this many packets leave without waiting
+    private static double[] tokens;
+    private static long[] refillTimes;
+
+    static volatile long numberOfSentPackets;
+    static volatile double sendRate; // Packets per second sent by the broadcaster over the last measurement period
 
     public static void launch() {
 
+        tokens = new double[Node.nodes.size()];
+        refillTimes = new long[Node.nodes.size()];
+        Arrays.fill(tokens, bucketCapacity);
+        Arrays.fill(refillTimes, System.nanoTime());
+
         (new Thread(() -> {
 
+            long measurementStartTime = System.currentTimeMillis(), measurementStartNumberOfSentPackets = 0;
+
             while (!shuttingDown) {
 
                 try {
 
-                    Node.broadcast(transactionsBytes.take());
+                    final List<byte[]> bundle = bundles.poll(SEND_RATE_MEASUREMENT_PERIOD, TimeUnit.MILLISECONDS);
+                    if (bundle != null) {
 
-                    Thread.sleep(PAUSE_BETWEEN_TRANSACTIONS);
+                        for (final byte[] transactionBytes : bundle) {
+
+                            send(transactionBytes);
+                            numberOfQueuedTransactions.decrementAndGet();
+                        }
+                    }
+
+                    final long time = System.currentTimeMillis();
+                    if (time - measurementStartTime >= SEND_RATE_MEASUREMENT_PERIOD) {
+
+                        sendRate = (numberOfSentPackets - measurementStartNumberOfSentPackets) * 1000.0 / (time - measurementStartTime);
+                        measurementStartTime = time;
+                        measurementStartNumberOfSentPackets = numberOfSentPackets;
+                    }
 
                 } catch (final Exception e) {
 
@@ -39,13 +70,64 @@ public class Broadcaster {
 
     public static void push(final byte[] transactionBytes) {
 
+        push(Collections.singletonList(transactionBytes));
+    }
+
+    public static void push(final List<byte[]> bundle) { // Blocks while the queue is full
+
         try {
 
-            transactionsBytes.put(transactionBytes);
+            numberOfQueuedTransactions.addAndGet(bundle.size());
+            bundles.put(bundle);
 
         } catch (final InterruptedException e) {
 
+            numberOfQueuedTransactions.addAndGet(-bundle.size());
+
             e.printStackTrace();
         }
     }
+
+    public static int queueDepth() {
+
+        return numberOfQueuedTransactions.get();
+    }
+
+    private static void send(final byte[] transactionBytes) throws InterruptedException { // Every neighbour gets the transaction as soon as its own bucket allows
+
+        final boolean[] sent = new boolean[tokens.length];
+        int numberOfNeighborsLeft = tokens.length;
+        while (numberOfNeighborsLeft > 0) {
+
+            long waitTime = Long.MAX_VALUE;
+            for (int i = 0; i < tokens.length; i++) {
+
+                if (!sent[i]) {
+
+                    final long time = System.nanoTime();
+                    tokens[i] = Math.min(bucketCapacity, tokens[i] + (time - refillTimes[i]) * packetsPerSecond / 1000000000);
+                    refillTimes[i] = time;
+
+                    if (tokens[i] >= 1) {
+
+                        tokens[i]--;
+                        Node.send(Node.nodes.get(i), transactionBytes);
+                        numberOfSentPackets++;
+
+                        sent[i] = true;
+                        numberOfNeighborsLeft--;
+
+                    } else {
+
+                        waitTime = Math.min(waitTime, (long)Math.ceil((1 - tokens[i]) * 1000000000 / packetsPerSecond));
+                    }
+                }
+            }
+
+            if (numberOfNeighborsLeft > 0) {
+
+                TimeUnit.NANOSECONDS.sleep(waitTime);
+            }
+        }
+    }
 }
@@ -35,6 +35,141 @@ class Configuration {
         return Integer.parseInt(properties.getProperty(PROPERTY_PREFIX + "apiPort", DEFAULT_API_PORT));
     }
 
+    static int apiMaxRequestSize() {
+
+        return Integer.parseInt(properties.getProperty(PROPERTY_PREFIX + "apiMaxRequestSize", "1048576"));
+    }
+
+    static long apiKeepAliveTimeout() {
+
+        return Long.parseLong(properties.getProperty(PROPERTY_PREFIX + "apiKeepAliveTimeout", "30000"));
+    }
+
+    static boolean apiVirtualThreads() { // Every connection gets its own thread, a platform one if the JDK lacks virtual threads
+
+        return Boolean.parseBoolean(properties.getProperty(PROPERTY_PREFIX + "apiVirtualThreads", "false"));
+    }
+
+    static int apiLookupsWorkers() {
+
+        return Integer.parseInt(properties.getProperty(PROPERTY_PREFIX + "apiLookupsWorkers", Integer.toString(Runtime.getRuntime().availableProcessors())));
+    }
+
+    static int apiLookupsQueueCapacity() {
+
+        return Integer.parseInt(properties.getProperty(PROPERTY_PREFIX + "apiLookupsQueueCapacity", "1000"));
+    }
+
+    static int apiGraphQueriesWorkers() {
+
+        return Integer.parseInt(properties.getProperty(PROPERTY_PREFIX + "apiGraphQueriesWorkers", "2"));
+    }
+
+    static int apiGraphQueriesQueueCapacity() {
+
+        return Integer.parseInt(properties.getProperty(PROPERTY_PREFIX + "apiGraphQueriesQueueCapacity", "100"));
+    }
+
+    static int apiWritesWorkers() { // Stores serialize on the storage anyway
+
+        return Integer.parseInt(properties.getProperty(PROPERTY_PREFIX + "apiWritesWorkers", "1"));
+    }
+
+    static int apiWritesQueueCapacity() {
+
+        return Integer.parseInt(properties.getProperty(PROPERTY_PREFIX + "apiWritesQueueCapacity", "100"));
+    }
+
+    static int apiProofOfWorkWorkers() { // Every request already uses all "powWorkers"
+
+        return Integer.parseInt(properties.getProperty(PROPERTY_PREFIX + "apiProofOfWorkWorkers", "1"));
+    }
+
+    static int apiProofOfWorkQueueCapacity() {
+
+        return Integer.parseInt(properties.getProperty(PROPERTY_PREFIX + "apiProofOfWorkQueueCapacity", "10"));
+    }
+
+    static Map<String, Integer> apiCommandLimits() { // "command=limit" pairs separated by commas
+
+        final Map<String, Integer> commandLimits = new HashMap<>();
+        for (final String commandLimit : properties.getProperty(PROPERTY_PREFIX + "apiCommandLimits", "broadcastTransactions=10, getTransfers=4, storeTransactions=10, transfer=1").split(",")) {
+
+            final int equalsSignOffset = commandLimit.indexOf('=');
+            if (equalsSignOffset > 0) {
+
+                commandLimits.put(commandLimit.substring(0, equalsSignOffset).trim(), Integer.parseInt(commandLimit.substring(equalsSignOffset + 1).trim()));
+            }
+        }
+
+        return commandLimits;
+    }
+
+    static int eventStreamPort() {
+
+        return Integer.parseInt(properties.getProperty(PROPERTY_PREFIX + "eventStreamPort", "14266"));
+    }
+
+    static int eventStreamBufferCapacity() { // Events per subscriber
+
+        return Integer.parseInt(properties.getProperty(PROPERTY_PREFIX + "eventStreamBufferCapacity", "10000"));
+    }
+
+    static int powWorkers() {
+
+        return Integer.parseInt(properties.getProperty(PROPERTY_PREFIX + "powWorkers", Integer.toString(Runtime.getRuntime().availableProcessors())));
+    }
+
+    static int packetsProcessors() {
+
+        return Integer.parseInt(properties.getProperty(PROPERTY_PREFIX + "packetsProcessors", Integer.toString(Runtime.getRuntime().availableProcessors())));
+    }
+
+    static int incomingPacketsBacklogCapacity() {
+
+        return Integer.parseInt(properties.getProperty(PROPERTY_PREFIX + "incomingPacketsBacklogCapacity", "4096"));
+    }
+
+    static double tipsSelectionAlpha() {
+
+        return Double.parseDouble(properties.getProperty(PROPERTY_PREFIX + "tipsSelectionAlpha", "0.001"));
+    }
+
+    static int tipsSelectionWindow() {
+
+        return Integer.parseInt(properties.getProperty(PROPERTY_PREFIX + "tipsSelectionWindow", "10000"));
+    }
+
+    static int tipsSelectionWalkers() {
+
+        return Integer.parseInt(properties.getProperty(PROPERTY_PREFIX + "tipsSelectionWalkers", Integer.toString(Runtime.getRuntime().availableProcessors())));
+    }
+
+    static int broadcastPacketsPerSecond() {
+
+        return Integer.parseInt(properties.getProperty(PROPERTY_PREFIX + "broadcastPacketsPerSecond", "100"));
+    }
+
+    static int broadcastBurst() {
+
+        return Integer.parseInt(properties.getProperty(PROPERTY_PREFIX + "broadcastBurst", "100"));
+    }
+
+    static int broadcastQueueCapacity() {
+
+        return Integer.parseInt(properties.getProperty(PROPERTY_PREFIX + "broadcastQueueCapacity", "1000"));
+    }
+
+    static int addressesCacheCapacity() {
+
+        return Integer.parseInt(properties.getProperty(PROPERTY_PREFIX + "addressesCacheCapacity", "10000"));
+    }
+
+    static String storageDirectory() {
+
+        return properties.getProperty(PROPERTY_PREFIX + "storageDirectory", ".");
+    }
+
     static String apiPassword() {
 
         return properties.getProperty(PROPERTY_PREFIX + "apiPassword");
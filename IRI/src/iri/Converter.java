@@ -9,47 +9,51 @@ public class Converter {
     static final int MAX_TRIT_VALUE = (RADIX - 1) / 2, MIN_TRIT_VALUE = -MAX_TRIT_VALUE;
 
     static final int NUMBER_OF_TRITS_IN_A_BYTE = 5;
-    static final int[][] BYTE_TO_TRITS_MAPPING;
+    static final int MAX_BYTE_VALUE = 121, MIN_BYTE_VALUE = -MAX_BYTE_VALUE;
+    private static final int[] BYTE_TO_TRITS = new int[256 * NUMBER_OF_TRITS_IN_A_BYTE]; // Indexed by the unsigned byte, the values which don't encode 5 trits map to the trits of their value minus 243, like they always did
 
     static final int NUMBER_OF_TRITS_IN_A_TRYTE = 3;
-    static final int[][] TRYTE_TO_TRITS_MAPPING;
     static final String TRYTE_ALPHABET = "9ABCDEFGHIJKLMNOPQRSTUVWXYZ";
     static final int MIN_TRYTE_VALUE = -13, MAX_TRYTE_VALUE = 13;
+    private static final char[] TRYTE_CHARS = TRYTE_ALPHABET.toCharArray(); // Indexed by the tryte value, negative ones wrap around
+    private static final int[] TRYTE_TO_TRITS = new int[TRYTE_CHARS.length * NUMBER_OF_TRITS_IN_A_TRYTE]; // Indexed like "TRYTE_CHARS"
+    private static final int[] CHAR_TO_TRYTE_INDEX = new int[256]; // Index into "TRYTE_CHARS" or -1
 
     static {
 
-        int numberOfByteToTritsMappingEntries = 1;
-        for (int i = 0; i < NUMBER_OF_TRITS_IN_A_BYTE; i++) {
+        for (int i = 0; i < 256; i++) {
 
-            numberOfByteToTritsMappingEntries *= RADIX;
+            int value = (byte)i < 0 ? ((byte)i + 243) : (byte)i;
+            if (value > MAX_BYTE_VALUE) {
+
+                value -= 243;
+            }
+            balancedTrits(value, BYTE_TO_TRITS, i * NUMBER_OF_TRITS_IN_A_BYTE, NUMBER_OF_TRITS_IN_A_BYTE);
         }
-        BYTE_TO_TRITS_MAPPING = new int[numberOfByteToTritsMappingEntries][];
 
-        final int[] trits = new int[NUMBER_OF_TRITS_IN_A_BYTE];
-        for (int i = 0; i < BYTE_TO_TRITS_MAPPING.length; i++) {
+        Arrays.fill(CHAR_TO_TRYTE_INDEX, -1);
+        for (int i = 0; i < TRYTE_CHARS.length; i++) {
 
-            int index = (int)longValue(trits, 0, trits.length);
-            if (index < 0) {
+            balancedTrits(i > MAX_TRYTE_VALUE ? (i - TRYTE_CHARS.length) : i, TRYTE_TO_TRITS, i * NUMBER_OF_TRITS_IN_A_TRYTE, NUMBER_OF_TRITS_IN_A_TRYTE);
+            CHAR_TO_TRYTE_INDEX[TRYTE_CHARS[i]] = i;
+        }
+    }
 
-                index += BYTE_TO_TRITS_MAPPING.length;
-            }
-            BYTE_TO_TRITS_MAPPING[index] = Arrays.copyOf(trits, trits.length);
+    private static void balancedTrits(int value, final int[] destination, final int destinationOffset, final int size) {
 
-            Utils.increment(trits, 0, trits.length);
-        }
+        for (int i = 0; i < size; i++) {
 
-        TRYTE_TO_TRITS_MAPPING = new int[TRYTE_ALPHABET.length()][];
-        final int[] trits2 = new int[NUMBER_OF_TRITS_IN_A_TRYTE];
-        for (int i = 0; i < TRYTE_TO_TRITS_MAPPING.length; i++) {
+            int trit = value % RADIX;
+            if (trit > MAX_TRIT_VALUE) {
 
-            int index = (int)longValue(trits2, 0, trits2.length);
-            if (index < 0) {
+                trit -= RADIX;
 
-                index += TRYTE_TO_TRITS_MAPPING.length;
-            }
-            TRYTE_TO_TRITS_MAPPING[index] = Arrays.copyOf(trits2, trits2.length);
+            } else if (trit < MIN_TRIT_VALUE) {
 
-            Utils.increment(trits2, 0, trits2.length);
+                trit += RADIX;
+            }
+            destination[destinationOffset + i] = trit;
+            value = (value - trit) / RADIX;
         }
     }
 
@@ -80,18 +84,62 @@ public class Converter {
         return value;
     }
 
-    public static byte[] bytes(final int[] trits, final int offset, final int size) {
+    public static void bytes(final int[] trits, final int offset, final int size, final byte[] destination, final int destinationOffset) {
 
-        final byte[] bytes = new byte[sizeInBytes(size)];
-        for (int i = 0; i < bytes.length; i++) {
+        int i = 0, j = destinationOffset;
+        for (; i + NUMBER_OF_TRITS_IN_A_BYTE <= size; i += NUMBER_OF_TRITS_IN_A_BYTE) {
+
+            final int k = offset + i;
+            destination[j++] = (byte)(trits[k] + trits[k + 1] * 3 + trits[k + 2] * 9 + trits[k + 3] * 27 + trits[k + 4] * 81);
+        }
+        if (i < size) {
 
             int value = 0;
-            for (int j = (size - i * NUMBER_OF_TRITS_IN_A_BYTE) < 5 ? (size - i * NUMBER_OF_TRITS_IN_A_BYTE) : NUMBER_OF_TRITS_IN_A_BYTE; j-- > 0; ) {
+            for (int k = size; k-- > i; ) {
+
+                value = value * RADIX + trits[offset + k];
+            }
+            destination[j] = (byte)value;
+        }
+    }
+
+    public static void bytes(final CharSequence trytes, final int offset, final int length, final byte[] destination, final int destinationOffset) { // Skips the trits stage, "destination" gets "sizeInBytes(length * NUMBER_OF_TRITS_IN_A_TRYTE)" bytes
+
+        int value = 0, power = 1, numberOfTrits = 0, j = destinationOffset;
+        for (int i = offset; i < offset + length; i++) {
+
+            final int tritsOffset = tryteIndex(trytes.charAt(i)) * NUMBER_OF_TRITS_IN_A_TRYTE;
+            for (int k = 0; k < NUMBER_OF_TRITS_IN_A_TRYTE; k++) {
+
+                value += TRYTE_TO_TRITS[tritsOffset + k] * power;
+                power *= RADIX;
+                if (++numberOfTrits == NUMBER_OF_TRITS_IN_A_BYTE) {
 
-                value = value * RADIX + trits[offset + i * NUMBER_OF_TRITS_IN_A_BYTE + j];
+                    destination[j++] = (byte)value;
+                    value = 0;
+                    power = 1;
+                    numberOfTrits = 0;
+                }
             }
-            bytes[i] = (byte)value;
         }
+        if (numberOfTrits > 0) {
+
+            destination[j] = (byte)value;
+        }
+    }
+
+    public static byte[] bytes(final String trytes) {
+
+        final byte[] bytes = new byte[sizeInBytes(trytes.length() * NUMBER_OF_TRITS_IN_A_TRYTE)];
+        bytes(trytes, 0, trytes.length(), bytes, 0);
+
+        return bytes;
+    }
+
+    public static byte[] bytes(final int[] trits, final int offset, final int size) {
+
+        final byte[] bytes = new byte[sizeInBytes(size)];
+        bytes(trits, offset, size, bytes, 0);
 
         return bytes;
     }
@@ -104,24 +152,68 @@ public class Converter {
     public static int[] trits(final byte[] bytes, final int destinationSize) {
 
         final int[] trits = new int[destinationSize];
-        for (int i = 0, offset = 0; i < bytes.length && offset < trits.length; i++) {
+        trits(bytes, 0, Math.min(destinationSize, bytes.length * NUMBER_OF_TRITS_IN_A_BYTE), trits, 0);
+
+        return trits;
+    }
 
-            System.arraycopy(BYTE_TO_TRITS_MAPPING[bytes[i] < 0 ? (bytes[i] + BYTE_TO_TRITS_MAPPING.length) : bytes[i]], 0, trits, offset, trits.length - offset < NUMBER_OF_TRITS_IN_A_BYTE ? (trits.length - offset) : NUMBER_OF_TRITS_IN_A_BYTE);
-            offset += NUMBER_OF_TRITS_IN_A_BYTE;
+    public static void trits(final byte[] bytes, final int offset, final int size, final int[] destination, final int destinationOffset) { // "offset" and "size" are in trits, so the range doesn't have to start on a byte boundary
+
+        int i = 0, j = offset / NUMBER_OF_TRITS_IN_A_BYTE;
+        if (offset % NUMBER_OF_TRITS_IN_A_BYTE != 0) {
+
+            for (int k = offset % NUMBER_OF_TRITS_IN_A_BYTE, tritsOffset = (bytes[j++] & 0xFF) * NUMBER_OF_TRITS_IN_A_BYTE; k < NUMBER_OF_TRITS_IN_A_BYTE && i < size; k++) {
+
+                destination[destinationOffset + i++] = BYTE_TO_TRITS[tritsOffset + k];
+            }
         }
+        for (; i + NUMBER_OF_TRITS_IN_A_BYTE <= size; i += NUMBER_OF_TRITS_IN_A_BYTE) {
+
+            final int tritsOffset = (bytes[j++] & 0xFF) * NUMBER_OF_TRITS_IN_A_BYTE;
+            final int k = destinationOffset + i;
+            destination[k] = BYTE_TO_TRITS[tritsOffset];
+            destination[k + 1] = BYTE_TO_TRITS[tritsOffset + 1];
+            destination[k + 2] = BYTE_TO_TRITS[tritsOffset + 2];
+            destination[k + 3] = BYTE_TO_TRITS[tritsOffset + 3];
+            destination[k + 4] = BYTE_TO_TRITS[tritsOffset + 4];
+        }
+        if (i < size) {
 
-        return trits;
+            for (int k = 0, tritsOffset = (bytes[j] & 0xFF) * NUMBER_OF_TRITS_IN_A_BYTE; i < size; k++) {
+
+                destination[destinationOffset + i++] = BYTE_TO_TRITS[tritsOffset + k];
+            }
+        }
+    }
+
+    public static void trits(final CharSequence trytes, final int offset, final int length, final int[] destination, final int destinationOffset) {
+
+        for (int i = 0, j = destinationOffset; i < length; i++) {
+
+            final int tritsOffset = tryteIndex(trytes.charAt(offset + i)) * NUMBER_OF_TRITS_IN_A_TRYTE;
+            destination[j++] = TRYTE_TO_TRITS[tritsOffset];
+            destination[j++] = TRYTE_TO_TRITS[tritsOffset + 1];
+            destination[j++] = TRYTE_TO_TRITS[tritsOffset + 2];
+        }
     }
 
     public static int[] trits(final String trytes) {
 
         final int[] trits = new int[trytes.length() * NUMBER_OF_TRITS_IN_A_TRYTE];
-        for (int i = 0; i < trytes.length(); i++) {
+        trits(trytes, 0, trytes.length(), trits, 0);
 
-            System.arraycopy(TRYTE_TO_TRITS_MAPPING[TRYTE_ALPHABET.indexOf(trytes.charAt(i))], 0, trits, i * NUMBER_OF_TRITS_IN_A_TRYTE, NUMBER_OF_TRITS_IN_A_TRYTE);
+        return trits;
+    }
+
+    private static int tryteIndex(final char tryte) {
+
+        final int index = tryte < CHAR_TO_TRYTE_INDEX.length ? CHAR_TO_TRYTE_INDEX[tryte] : -1;
+        if (index < 0) {
+
+            throw new IllegalArgumentException("Illegal tryte: '" + tryte + "'");
         }
 
-        return trits;
+        return index;
     }
 
     public static int[] trits(final BigInteger bigInteger, final int destinationSize) {
@@ -158,20 +250,31 @@ public class Converter {
         return trits(BigInteger.valueOf(value), destinationSize);
     }
 
-    public static String trytes(final int[] trits, final int offset, final int size) {
+    public static void trytes(final int[] trits, final int offset, final int size, final char[] destination, final int destinationOffset) { // A trailing incomplete tryte is padded with zero trits
 
-        StringBuilder trytes = new StringBuilder();
-        for (int i = 0; i < (size + NUMBER_OF_TRITS_IN_A_TRYTE - 1) / NUMBER_OF_TRITS_IN_A_TRYTE; i++) {
+        int i = 0, j = destinationOffset;
+        for (; i + NUMBER_OF_TRITS_IN_A_TRYTE <= size; i += NUMBER_OF_TRITS_IN_A_TRYTE) {
+
+            final int value = trits[offset + i] + trits[offset + i + 1] * 3 + trits[offset + i + 2] * 9;
+            destination[j++] = TRYTE_CHARS[value < 0 ? (value + TRYTE_CHARS.length) : value];
+        }
+        if (i < size) {
 
-            int j = trits[offset + i * 3] + trits[offset + i * 3 + 1] * 3 + trits[offset + i * 3 + 2] * 9;
-            if (j < 0) {
+            int value = 0;
+            for (int k = size; k-- > i; ) {
 
-                j += TRYTE_ALPHABET.length();
+                value = value * RADIX + trits[offset + k];
             }
-            trytes.append(TRYTE_ALPHABET.charAt(j));
+            destination[j] = TRYTE_CHARS[value < 0 ? (value + TRYTE_CHARS.length) : value];
         }
+    }
+
+    public static String trytes(final int[] trits, final int offset, final int size) {
+
+        final char[] trytes = new char[(size + NUMBER_OF_TRITS_IN_A_TRYTE - 1) / NUMBER_OF_TRITS_IN_A_TRYTE];
+        trytes(trits, offset, size, trytes, 0);
 
-        return trytes.toString();
+        return new String(trytes);
     }
 
     public static String trytes(final int[] trits) {
@@ -179,6 +282,38 @@ public class Converter {
         return trytes(trits, 0, trits.length);
     }
 
+    public static void trytes(final byte[] bytes, final int offset, final int size, final char[] destination, final int destinationOffset) { // Skips the trits stage, "offset" and "size" are in trits
+
+        int value = 0, power = 1, numberOfTrits = 0, j = destinationOffset;
+        for (int i = offset / NUMBER_OF_TRITS_IN_A_BYTE, k = offset % NUMBER_OF_TRITS_IN_A_BYTE, n = 0; n < size; i++, k = 0) {
+
+            for (final int tritsOffset = (bytes[i] & 0xFF) * NUMBER_OF_TRITS_IN_A_BYTE; k < NUMBER_OF_TRITS_IN_A_BYTE && n < size; k++, n++) {
+
+                value += BYTE_TO_TRITS[tritsOffset + k] * power;
+                power *= RADIX;
+                if (++numberOfTrits == NUMBER_OF_TRITS_IN_A_TRYTE) {
+
+                    destination[j++] = TRYTE_CHARS[value < 0 ? (value + TRYTE_CHARS.length) : value];
+                    value = 0;
+                    power = 1;
+                    numberOfTrits = 0;
+                }
+            }
+        }
+        if (numberOfTrits > 0) {
+
+            destination[j] = TRYTE_CHARS[value < 0 ? (value + TRYTE_CHARS.length) : value];
+        }
+    }
+
+    public static String trytes(final byte[] bytes, final int offset, final int size) {
+
+        final char[] trytes = new char[(size + NUMBER_OF_TRITS_IN_A_TRYTE - 1) / NUMBER_OF_TRITS_IN_A_TRYTE];
+        trytes(bytes, offset, size, trytes, 0);
+
+        return new String(trytes);
+    }
+
     public static int tryteValue(final int[] trits, final int offset) {
 
         return trits[offset] + trits[offset + 1] * 3 + trits[offset + 2] * 9;
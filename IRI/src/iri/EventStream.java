@@ -0,0 +1,392 @@
+package iri;
+
+import java.io.*;
+import java.net.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.function.*;
+
+class EventStream { // Server-Sent Events, "GET /?events=transaction,tip,solid&addresses=...&approvees=..." subscribes, every parameter is optional
+
+    static final String TRANSACTION = "transaction", TIP = "tip", SOLID = "solid";
+    static final Set<String> EVENTS = new HashSet<>(Arrays.asList(TRANSACTION, TIP, SOLID));
+
+    static final int MAX_REQUEST_SIZE = 8192;
+    static final int MAX_NUMBER_OF_EVENTS_PER_WRITE = 64;
+
+    static final byte[] RESPONSE_HEADER = "HTTP/1.1 200 OK\r\nAccess-Control-Allow-Origin: *\r\nContent-Type: text/event-stream\r\nCache-Control: no-cache\r\nConnection: keep-alive\r\n\r\n".getBytes(StandardCharsets.US_ASCII);
+
+    static final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+
+    private static AsynchronousServerSocketChannel serverChannel;
+
+    static void launch() throws IOException {
+
+        serverChannel = AsynchronousServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), Configuration.eventStreamPort()));
+        serverChannel.accept(null, new CompletionHandler<AsynchronousSocketChannel, Void>() {
+
+            @Override
+            public void completed(final AsynchronousSocketChannel clientChannel, final Void attachment) {
+
+                serverChannel.accept(null, this);
+
+                (new Subscriber(clientChannel)).read();
+            }
+
+            @Override
+            public void failed(final Throwable e, final Void attachment) {
+            }
+        });
+    }
+
+    static void shutDown() {
+
+        try {
+
+            if (serverChannel != null) {
+
+                serverChannel.close();
+            }
+
+        } catch (final Exception e) {
+        }
+
+        for (final Subscriber subscriber : subscribers) {
+
+            subscriber.close();
+        }
+    }
+
+    static void transactionAdded(final Transaction transaction) { // The publishers are called on hot paths, nothing is encoded unless somebody is interested
+
+        if (!subscribers.isEmpty()) {
+
+            publish(TRANSACTION, transaction.hash(), transaction.address(), transaction.approvedTrunkTransaction(), transaction.approvedBranchTransaction(),
+                    () -> "\"hash\": \"" + transaction.hash() + "\""
+                            + ", \"address\": \"" + transaction.address() + "\""
+                            + ", \"value\": " + transaction.value
+                            + ", \"timestamp\": " + transaction.timestamp
+                            + ", \"index\": " + transaction.index
+                            + ", \"trunkTransaction\": \"" + transaction.approvedTrunkTransaction() + "\""
+                            + ", \"branchTransaction\": \"" + transaction.approvedBranchTransaction() + "\"");
+        }
+    }
+
+    static void transactionSolidified(final Hash hash, final Hash address, final long value, final Hash approvedTrunkTransaction, final Hash approvedBranchTransaction) {
+
+        if (!subscribers.isEmpty()) {
+
+            publish(SOLID, hash, address, approvedTrunkTransaction, approvedBranchTransaction,
+                    () -> "\"hash\": \"" + hash + "\""
+                            + ", \"address\": \"" + address + "\""
+                            + ", \"value\": " + value);
+        }
+    }
+
+    static void tipAdded(final Hash tip) {
+
+        if (!subscribers.isEmpty()) {
+
+            publish(TIP, null, null, null, null, () -> "\"hash\": \"" + tip + "\", \"added\": true");
+        }
+    }
+
+    static void tipRemoved(final Hash tip) {
+
+        if (!subscribers.isEmpty()) {
+
+            publish(TIP, null, null, null, null, () -> "\"hash\": \"" + tip + "\", \"added\": false");
+        }
+    }
+
+    private static void publish(final String event, final Hash hash, final Hash address, final Hash approvedTrunkTransaction, final Hash approvedBranchTransaction, final Supplier<String> data) {
+
+        byte[] bytes = null;
+        for (final Subscriber subscriber : subscribers) {
+
+            if (subscriber.events.contains(event) && (hash == null || subscriber.matches(hash, address, approvedTrunkTransaction, approvedBranchTransaction))) {
+
+                if (bytes == null) {
+
+                    bytes = ("event: " + event + "\ndata: {" + data.get() + "}\n\n").getBytes(StandardCharsets.US_ASCII);
+                }
+
+                subscriber.push(bytes);
+            }
+        }
+    }
+
+    static final class Subscriber {
+
+        final AsynchronousSocketChannel channel;
+
+        final Set<String> events = new HashSet<>(EVENTS);
+        final Set<Hash> addresses = new HashSet<>(), approvees = new HashSet<>(); // Transaction and solid events are sent only for these, tip events aren't filtered
+
+        final BlockingQueue<byte[]> queue = new ArrayBlockingQueue<>(Math.max(1, Configuration.eventStreamBufferCapacity())); // Encoded events of this subscriber, the byte arrays themselves are shared with the other subscribers
+        final AtomicInteger numberOfDroppedEvents = new AtomicInteger(); // The subscriber is told how many events it has missed while its queue was full
+        final AtomicBoolean writing = new AtomicBoolean();
+
+        final ByteBuffer requestBuffer = ByteBuffer.allocate(MAX_REQUEST_SIZE);
+
+        Subscriber(final AsynchronousSocketChannel channel) {
+
+            this.channel = channel;
+        }
+
+        void read() {
+
+            channel.read(requestBuffer, Configuration.apiKeepAliveTimeout(), TimeUnit.MILLISECONDS, this, new CompletionHandler<Integer, Subscriber>() {
+
+                @Override
+                public void completed(final Integer numberOfBytes, final Subscriber subscriber) {
+
+                    if (numberOfBytes < 0) {
+
+                        close();
+
+                        return;
+                    }
+
+                    final String request = new String(requestBuffer.array(), 0, requestBuffer.position(), StandardCharsets.ISO_8859_1);
+                    final int crlfcrlfOffset = request.indexOf("\r\n\r\n");
+                    if (crlfcrlfOffset >= 0) {
+
+                        subscribe(request.substring(0, request.indexOf("\r\n")));
+
+                    } else if (requestBuffer.hasRemaining()) {
+
+                        read();
+
+                    } else {
+
+                        reject("431 Request Header Fields Too Large");
+                    }
+                }
+
+                @Override
+                public void failed(final Throwable e, final Subscriber subscriber) {
+
+                    close();
+                }
+            });
+        }
+
+        void subscribe(final String requestLine) {
+
+            try {
+
+                final String[] requestLineParts = requestLine.split(" ");
+                if (requestLineParts.length != 3) {
+
+                    throw new IllegalArgumentException("Malformed request line");
+                }
+
+                final int questionMarkOffset = requestLineParts[1].indexOf('?');
+                if (questionMarkOffset >= 0) {
+
+                    for (final String parameter : requestLineParts[1].substring(questionMarkOffset + 1).split("&")) {
+
+                        final int equalsSignOffset = parameter.indexOf('=');
+                        if (equalsSignOffset < 0) {
+
+                            continue;
+                        }
+
+                        final List<String> values = new ArrayList<>();
+                        for (final String value : URLDecoder.decode(parameter.substring(equalsSignOffset + 1), "UTF-8").split(",")) {
+
+                            if (!value.trim().isEmpty()) {
+
+                                values.add(value.trim());
+                            }
+                        }
+
+                        switch (parameter.substring(0, equalsSignOffset)) {
+
+                            case "events": {
+
+                                if (!EVENTS.containsAll(values)) {
+
+                                    throw new IllegalArgumentException("Unknown event in " + values);
+                                }
+                                if (!values.isEmpty()) {
+
+                                    events.retainAll(values);
+                                }
+
+                            } break;
+
+                            case "addresses": {
+
+                                for (final String value : values) {
+
+                                    addresses.add(new Hash(value));
+                                }
+
+                            } break;
+
+                            case "approvees": { // Matches these transactions and their direct approvers only, following a whole bundle or deeper approvers would need a filter on the bundle hash
+
+                                for (final String value : values) {
+
+                                    approvees.add(new Hash(value));
+                                }
+
+                            } break;
+                        }
+                    }
+                }
+
+            } catch (final Exception e) {
+
+                reject("400 Bad Request");
+
+                return;
+            }
+
+            queue.offer(RESPONSE_HEADER);
+            subscribers.add(this);
+
+            watch();
+            flush();
+        }
+
+        void watch() { // Nothing more is expected from the subscriber, the pending read notices a peer gone away even if no event matches its filters
+
+            requestBuffer.clear();
+            channel.read(requestBuffer, this, new CompletionHandler<Integer, Subscriber>() {
+
+                @Override
+                public void completed(final Integer numberOfBytes, final Subscriber subscriber) {
+
+                    if (numberOfBytes < 0) {
+
+                        close();
+
+                    } else {
+
+                        watch();
+                    }
+                }
+
+                @Override
+                public void failed(final Throwable e, final Subscriber subscriber) {
+
+                    close();
+                }
+            });
+        }
+
+        boolean matches(final Hash hash, final Hash address, final Hash approvedTrunkTransaction, final Hash approvedBranchTransaction) {
+
+            if (addresses.isEmpty() && approvees.isEmpty()) {
+
+                return true;
+            }
+
+            return addresses.contains(address) || approvees.contains(hash) || approvees.contains(approvedTrunkTransaction) || approvees.contains(approvedBranchTransaction);
+        }
+
+        void push(final byte[] event) {
+
+            if (!queue.offer(event)) {
+
+                numberOfDroppedEvents.incrementAndGet();
+            }
+
+            flush();
+        }
+
+        void flush() { // Only one write is in progress at a time, it takes everything queued so far
+
+            if (!writing.compareAndSet(false, true)) {
+
+                return;
+            }
+
+            final List<ByteBuffer> buffers = new ArrayList<>();
+            final int numberOfDroppedEvents = this.numberOfDroppedEvents.getAndSet(0);
+            if (numberOfDroppedEvents > 0) {
+
+                buffers.add(ByteBuffer.wrap(("event: dropped\ndata: {\"count\": " + numberOfDroppedEvents + "}\n\n").getBytes(StandardCharsets.US_ASCII)));
+            }
+            byte[] event;
+            while (buffers.size() < MAX_NUMBER_OF_EVENTS_PER_WRITE && (event = queue.poll()) != null) {
+
+                buffers.add(ByteBuffer.wrap(event));
+            }
+
+            if (buffers.isEmpty()) {
+
+                writing.set(false);
+                if (!queue.isEmpty() || this.numberOfDroppedEvents.get() > 0) { // Pushed after the queue was drained but before "writing" was cleared
+
+                    flush();
+                }
+
+                return;
+            }
+
+            final ByteBuffer[] bufferArray = buffers.toArray(new ByteBuffer[buffers.size()]);
+            channel.write(bufferArray, 0, bufferArray.length, 0, TimeUnit.MILLISECONDS, this, new CompletionHandler<Long, Subscriber>() {
+
+                @Override
+                public void completed(final Long numberOfBytes, final Subscriber subscriber) {
+
+                    if (bufferArray[bufferArray.length - 1].hasRemaining()) {
+
+                        channel.write(bufferArray, 0, bufferArray.length, 0, TimeUnit.MILLISECONDS, subscriber, this);
+
+                    } else {
+
+                        writing.set(false);
+
+                        flush();
+                    }
+                }
+
+                @Override
+                public void failed(final Throwable e, final Subscriber subscriber) {
+
+                    close();
+                }
+            });
+        }
+
+        void reject(final String status) {
+
+            channel.write(ByteBuffer.wrap(("HTTP/1.1 " + status + "\r\nContent-Length: 0\r\nConnection: close\r\n\r\n").getBytes(StandardCharsets.US_ASCII)), this, new CompletionHandler<Integer, Subscriber>() {
+
+                @Override
+                public void completed(final Integer numberOfBytes, final Subscriber subscriber) {
+
+                    close();
+                }
+
+                @Override
+                public void failed(final Throwable e, final Subscriber subscriber) {
+
+                    close();
+                }
+            });
+        }
+
+        void close() {
+
+            subscribers.remove(this);
+
+            try {
+
+                channel.close();
+
+            } catch (final Exception e) {
+            }
+        }
+    }
+}
@@ -27,7 +27,10 @@ public class Hash {
 
     public Hash(final int[] trits, final int offset) {
 
-        this(Converter.bytes(trits, offset, Bastard.HASH_SIZE));
+        bytes = new byte[SIZE_IN_BYTES];
+        Converter.bytes(trits, offset, Bastard.HASH_SIZE, bytes, 0);
+
+        hashCode = Arrays.hashCode(bytes);
     }
 
     public Hash(final int[] trits) {
@@ -37,7 +40,10 @@ public class Hash {
 
     public Hash(final String trytes) {
 
-        this(Converter.trits(trytes));
+        bytes = new byte[SIZE_IN_BYTES];
+        Converter.bytes(trytes, 0, Bastard.HASH_SIZE / Converter.NUMBER_OF_TRITS_IN_A_TRYTE, bytes, 0);
+
+        hashCode = Arrays.hashCode(bytes);
     }
 
     public int[] trits() {
@@ -60,6 +66,6 @@ public class Hash {
     @Override
     public String toString() {
 
-        return Converter.trytes(trits());
+        return Converter.trytes(bytes, 0, Bastard.HASH_SIZE);
     }
 }
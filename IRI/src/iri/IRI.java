@@ -14,10 +14,12 @@ class IRI {
             try {
 
                 API.shutDown();
+                EventStream.shutDown();
                 TipsSelector.shutDown();
                 Broadcaster.shutDown();
                 Rebroadcaster.shutDown();
                 Node.shutDown();
+                ProofOfWorkGenerator.shutDown();
                 Storage.shutDown();
 
             } catch (final Exception e) {
@@ -38,6 +40,7 @@ class IRI {
             Broadcaster.launch();
             TipsSelector.launch();
             API.launch();
+            EventStream.launch();
 
         } catch (final Exception e) {
 
@@ -0,0 +1,507 @@
+package iri;
+
+import java.nio.*;
+import java.nio.charset.*;
+import java.util.*;
+
+class Json { // Just enough JSON for the API, parsed values have the same types Nashorn's "Java.asJSONCompatible" used to produce
+
+    static Map<String, Object> parse(final CharSequence json, final String... trytesArrays) { // The top-level arrays named in "trytesArrays" are decoded straight into byte arrays, the trytes never become strings
+
+        final Reader reader = new Reader(json);
+        final Map<String, Object> object = new LinkedHashMap<>();
+        reader.beginObject();
+        while (reader.hasNext()) {
+
+            final String name = reader.nextName();
+            if (Arrays.asList(trytesArrays).contains(name) && reader.peek() == '[') {
+
+                final List<byte[]> array = new ArrayList<>();
+                reader.beginArray();
+                while (reader.hasNext()) {
+
+                    array.add(reader.nextTrytes());
+                }
+                reader.endArray();
+                object.put(name, array);
+
+            } else {
+
+                object.put(name, reader.nextValue());
+            }
+        }
+        reader.endObject();
+        reader.skipWhitespace();
+        if (reader.position < json.length()) {
+
+            throw new IllegalArgumentException("Unexpected data at position " + reader.position);
+        }
+
+        return object;
+    }
+
+    static final class Reader { // Pull parser, strings are read only as far as the caller needs them
+
+        private final CharSequence json;
+        private int position;
+        private boolean firstElement; // Set when an object or an array begins, every later element must be preceded by a comma
+
+        Reader(final CharSequence json) {
+
+            this.json = json;
+        }
+
+        Object nextValue() {
+
+            switch (peek()) {
+
+                case '{': {
+
+                    final Map<String, Object> object = new LinkedHashMap<>();
+                    beginObject();
+                    while (hasNext()) {
+
+                        final String name = nextName();
+                        object.put(name, nextValue());
+                    }
+                    endObject();
+
+                    return object;
+                }
+
+                case '[': {
+
+                    final List<Object> array = new ArrayList<>();
+                    beginArray();
+                    while (hasNext()) {
+
+                        array.add(nextValue());
+                    }
+                    endArray();
+
+                    return array;
+                }
+
+                case '"': {
+
+                    return nextString();
+                }
+
+                case 't': {
+
+                    expect("true");
+
+                    return Boolean.TRUE;
+                }
+
+                case 'f': {
+
+                    expect("false");
+
+                    return Boolean.FALSE;
+                }
+
+                case 'n': {
+
+                    expect("null");
+
+                    return null;
+                }
+
+                default: {
+
+                    return nextNumber();
+                }
+            }
+        }
+
+        void beginObject() {
+
+            consume('{');
+            firstElement = true;
+        }
+
+        void endObject() {
+
+            consume('}');
+        }
+
+        void beginArray() {
+
+            consume('[');
+            firstElement = true;
+        }
+
+        void endArray() {
+
+            consume(']');
+        }
+
+        boolean hasNext() { // Also consumes the comma between elements
+
+            final char c = peek();
+            if (firstElement) {
+
+                firstElement = false;
+
+                return c != '}' && c != ']';
+            }
+            if (c == '}' || c == ']') {
+
+                return false;
+            }
+            consume(',');
+
+            return true;
+        }
+
+        String nextName() {
+
+            final String name = nextString();
+            consume(':');
+
+            return name;
+        }
+
+        String nextString() {
+
+            consume('"');
+
+            final int start = position;
+            while (position < json.length() && json.charAt(position) != '"' && json.charAt(position) != '\\') {
+
+                position++;
+            }
+            if (position < json.length() && json.charAt(position) == '"') {
+
+                return json.subSequence(start, position++).toString();
+            }
+
+            final StringBuilder string = new StringBuilder(json.subSequence(start, position));
+            while (true) {
+
+                if (position >= json.length()) {
+
+                    throw new IllegalArgumentException("Unterminated string");
+                }
+
+                final char c = json.charAt(position++);
+                if (c == '"') {
+
+                    return string.toString();
+                }
+                if (c != '\\') {
+
+                    string.append(c);
+
+                } else {
+
+                    final char escaped = json.charAt(position++);
+                    switch (escaped) {
+
+                        case 'b': string.append('\b'); break;
+                        case 'f': string.append('\f'); break;
+                        case 'n': string.append('\n'); break;
+                        case 'r': string.append('\r'); break;
+                        case 't': string.append('\t'); break;
+                        case 'u': string.append((char)Integer.parseInt(json.subSequence(position, position += 4).toString(), 16)); break;
+                        default: string.append(escaped);
+                    }
+                }
+            }
+        }
+
+        byte[] nextTrytes() { // Decodes a string of trytes without materializing it
+
+            consume('"');
+
+            final int start = position;
+            while (position < json.length() && json.charAt(position) != '"') {
+
+                position++;
+            }
+            if (position >= json.length()) {
+
+                throw new IllegalArgumentException("Unterminated string");
+            }
+            final byte[] bytes = new byte[Converter.sizeInBytes((position - start) * Converter.NUMBER_OF_TRITS_IN_A_TRYTE)];
+            Converter.bytes(json, start, position++ - start, bytes, 0);
+
+            return bytes;
+        }
+
+        Number nextNumber() {
+
+            skipWhitespace();
+
+            final int start = position;
+            boolean integer = true;
+            while (position < json.length()) {
+
+                final char c = json.charAt(position);
+                if (c == '.' || c == 'e' || c == 'E') {
+
+                    integer = false;
+
+                } else if (!(c == '-' || c == '+' || (c >= '0' && c <= '9'))) {
+
+                    break;
+                }
+                position++;
+            }
+            if (position == start) {
+
+                throw new IllegalArgumentException("Unexpected character at position " + position);
+            }
+
+            final String number = json.subSequence(start, position).toString();
+            if (integer) {
+
+                final long value = Long.parseLong(number);
+
+                return value == (int)value ? (Number)(int)value : (Number)value;
+
+            } else {
+
+                return Double.parseDouble(number);
+            }
+        }
+
+        char peek() {
+
+            skipWhitespace();
+            if (position >= json.length()) {
+
+                throw new IllegalArgumentException("Unexpected end of data");
+            }
+
+            return json.charAt(position);
+        }
+
+        private void consume(final char expected) {
+
+            if (peek() != expected) {
+
+                throw new IllegalArgumentException("'" + expected + "' expected at position " + position);
+            }
+            position++;
+        }
+
+        private void expect(final String literal) {
+
+            for (int i = 0; i < literal.length(); i++) {
+
+                if (position >= json.length() || json.charAt(position++) != literal.charAt(i)) {
+
+                    throw new IllegalArgumentException("'" + literal + "' expected");
+                }
+            }
+        }
+
+        private void skipWhitespace() {
+
+            while (position < json.length() && Character.isWhitespace(json.charAt(position))) {
+
+                position++;
+            }
+        }
+    }
+
+    static final class Writer { // Writes UTF-8 into a direct buffer which is reused from response to response
+
+        static final int INITIAL_CAPACITY = 65536;
+
+        private ByteBuffer buffer = ByteBuffer.allocateDirect(INITIAL_CAPACITY);
+        private final char[] trytes = new char[(Transaction.SIZE + Converter.NUMBER_OF_TRITS_IN_A_TRYTE - 1) / Converter.NUMBER_OF_TRITS_IN_A_TRYTE];
+        private boolean separatorNeeded;
+
+        int capacity() {
+
+            return buffer.capacity();
+        }
+
+        Writer clear() {
+
+            buffer.clear();
+            separatorNeeded = false;
+
+            return this;
+        }
+
+        ByteBuffer buffer() { // Flipped, ready to be sent
+
+            final ByteBuffer buffer = this.buffer.duplicate();
+            buffer.flip();
+
+            return buffer;
+        }
+
+        Writer beginObject() {
+
+            separate();
+            put('{');
+            separatorNeeded = false;
+
+            return this;
+        }
+
+        Writer endObject() {
+
+            put('}');
+            separatorNeeded = true;
+
+            return this;
+        }
+
+        Writer beginArray() {
+
+            separate();
+            put('[');
+            separatorNeeded = false;
+
+            return this;
+        }
+
+        Writer endArray() {
+
+            put(']');
+            separatorNeeded = true;
+
+            return this;
+        }
+
+        Writer name(final String name) {
+
+            value(name);
+            put(':');
+            put(' ');
+            separatorNeeded = false;
+
+            return this;
+        }
+
+        Writer value(final String value) {
+
+            if (value == null) {
+
+                return raw("null");
+            }
+
+            separate();
+            put('"');
+            for (int i = 0; i < value.length(); i++) {
+
+                final char c = value.charAt(i);
+                switch (c) {
+
+                    case '"': put('\\'); put('"'); break;
+                    case '\\': put('\\'); put('\\'); break;
+                    case '\n': put('\\'); put('n'); break;
+                    case '\r': put('\\'); put('r'); break;
+                    case '\t': put('\\'); put('t'); break;
+                    default: {
+
+                        if (c < 0x20 || c > 0x7E) {
+
+                            put(String.format("\\u%04x", (int)c));
+
+                        } else {
+
+                            put(c);
+                        }
+                    }
+                }
+            }
+            put('"');
+            separatorNeeded = true;
+
+            return this;
+        }
+
+        Writer value(final long value) {
+
+            return raw(Long.toString(value));
+        }
+
+        Writer value(final Object value) { // Hashes and the like are written as strings, numbers and booleans as they are
+
+            return value == null || value instanceof Number || value instanceof Boolean ? raw(String.valueOf(value)) : value(value.toString());
+        }
+
+        Writer trytes(final int[] trits, final int offset, final int size) {
+
+            final char[] trytes = size <= this.trytes.length * Converter.NUMBER_OF_TRITS_IN_A_TRYTE ? this.trytes : new char[(size + Converter.NUMBER_OF_TRITS_IN_A_TRYTE - 1) / Converter.NUMBER_OF_TRITS_IN_A_TRYTE];
+            Converter.trytes(trits, offset, size, trytes, 0);
+
+            return trytes(trytes, (size + Converter.NUMBER_OF_TRITS_IN_A_TRYTE - 1) / Converter.NUMBER_OF_TRITS_IN_A_TRYTE);
+        }
+
+        Writer trytes(final byte[] bytes, final int offset, final int size) { // "offset" and "size" are in trits, the trits are never materialized
+
+            final char[] trytes = size <= this.trytes.length * Converter.NUMBER_OF_TRITS_IN_A_TRYTE ? this.trytes : new char[(size + Converter.NUMBER_OF_TRITS_IN_A_TRYTE - 1) / Converter.NUMBER_OF_TRITS_IN_A_TRYTE];
+            Converter.trytes(bytes, offset, size, trytes, 0);
+
+            return trytes(trytes, (size + Converter.NUMBER_OF_TRITS_IN_A_TRYTE - 1) / Converter.NUMBER_OF_TRITS_IN_A_TRYTE);
+        }
+
+        private Writer trytes(final char[] trytes, final int length) {
+
+            separate();
+            ensureCapacity(length + 2);
+            buffer.put((byte)'"');
+            for (int i = 0; i < length; i++) {
+
+                buffer.put((byte)trytes[i]);
+            }
+            buffer.put((byte)'"');
+            separatorNeeded = true;
+
+            return this;
+        }
+
+        Writer raw(final String json) { // Must be a complete value or a sequence of comma separated members
+
+            if (!json.isEmpty()) {
+
+                separate();
+                put(json);
+                separatorNeeded = true;
+            }
+
+            return this;
+        }
+
+        private void separate() {
+
+            if (separatorNeeded) {
+
+                put(',');
+                put(' ');
+            }
+        }
+
+        private void put(final char c) {
+
+            ensureCapacity(1);
+            buffer.put((byte)c);
+        }
+
+        private void put(final String string) {
+
+            final byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+            ensureCapacity(bytes.length);
+            buffer.put(bytes);
+        }
+
+        private void ensureCapacity(final int numberOfBytes) {
+
+            if (buffer.remaining() < numberOfBytes) {
+
+                final ByteBuffer biggerBuffer = ByteBuffer.allocateDirect(Math.max(buffer.capacity() * 2, buffer.position() + numberOfBytes));
+                buffer.flip();
+                biggerBuffer.put(buffer);
+                buffer = biggerBuffer;
+            }
+        }
+    }
+}
@@ -2,9 +2,12 @@ package iri;
 
 import java.io.*;
 import java.net.*;
+import java.nio.*;
+import java.nio.channels.*;
 import java.nio.file.*;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
 
 class Node {
 
@@ -13,13 +16,19 @@ class Node {
     static final int PACKET_SIZE_IN_TRITS = Transaction.SIZE + Bastard.HASH_SIZE;
     static final int PACKET_SIZE_IN_BYTES = Converter.sizeInBytes(PACKET_SIZE_IN_TRITS);
 
+    static final int BACKPRESSURE_TIMEOUT = 10; // Milliseconds the receiver waits for a free slot before dropping a packet
+
     static final List<SocketAddress> nodes = new ArrayList<>();
-    static DatagramSocket socket;
-    private static boolean shuttingDown;
+    static DatagramChannel channel;
+    private static volatile boolean shuttingDown;
+
+    static final BlockingQueue<Envelope> envelopes = new ArrayBlockingQueue<>(Math.max(1, Configuration.incomingPacketsBacklogCapacity()));
+    private static final BlockingQueue<Envelope> freeEnvelopes = new ArrayBlockingQueue<>(Math.max(1, Configuration.incomingPacketsBacklogCapacity()) + Math.max(1, Configuration.packetsProcessors())); // Envelopes are reused, so the receive path doesn't allocate per packet
+    static final LongAdder numberOfBackpressuredPackets = new LongAdder(), numberOfDroppedPackets = new LongAdder(); // Packets which found the backlog full and had to wait, and those which were dropped after waiting
+    static final Map<String, Long> nodesActivity = new ConcurrentHashMap<>();
+    static final Map<SocketAddress, Long> lastSendTimes = new ConcurrentHashMap<>(); // Every packet carries a request, so a neighbour sent to recently needs no separate request
 
-    static final DatagramPacket receivingPacket = new DatagramPacket(new byte[PACKET_SIZE_IN_BYTES], PACKET_SIZE_IN_BYTES);
-    static final DatagramPacket sendingPacket = new DatagramPacket(new byte[PACKET_SIZE_IN_BYTES], PACKET_SIZE_IN_BYTES);
-    static final Map<String, Long> nodesActivity = new HashMap<>();
+    private static final ThreadLocal<ByteBuffer> sendingBuffer = ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(PACKET_SIZE_IN_BYTES));
 
     static void launch() throws Exception {
 
@@ -31,27 +40,51 @@ class Node {
                 nodes.add(new InetSocketAddress(uri.getHost(), uri.getPort()));
             }
         }
-        socket = new DatagramSocket(PORT);
-        final BlockingQueue<Envelope> envelopes = new LinkedBlockingQueue<>();
+        while (freeEnvelopes.remainingCapacity() > 0) {
+
+            freeEnvelopes.add(new Envelope());
+        }
+
+        channel = DatagramChannel.open();
+        channel.bind(new InetSocketAddress(PORT));
 
         (new Thread(() -> {
 
+            final ByteBuffer receivingBuffer = ByteBuffer.allocateDirect(PACKET_SIZE_IN_BYTES + 1); // The extra byte reveals oversized packets
+
             while (!shuttingDown) {
 
                 try {
 
-                    socket.receive(receivingPacket);
-                    if (receivingPacket.getLength() == PACKET_SIZE_IN_BYTES) {
+                    receivingBuffer.clear();
+                    final SocketAddress socketAddress = channel.receive(receivingBuffer);
+                    if (receivingBuffer.position() == PACKET_SIZE_IN_BYTES) {
 
-                        envelopes.put(new Envelope());
+                        Envelope envelope = freeEnvelopes.poll(); // All envelopes in use means the backlog is full or about to be
+                        if (envelope == null) {
+
+                            numberOfBackpressuredPackets.increment();
+                            envelope = freeEnvelopes.poll(BACKPRESSURE_TIMEOUT, TimeUnit.MILLISECONDS);
+                        }
+                        if (envelope == null) {
 
-                        nodesActivity.put(receivingPacket.getSocketAddress().toString(), System.currentTimeMillis());
+                            numberOfDroppedPackets.increment();
 
-                    } else {
+                        } else {
 
-                        receivingPacket.setLength(PACKET_SIZE_IN_BYTES);
+                            receivingBuffer.flip();
+                            envelope.socketAddress = socketAddress;
+                            receivingBuffer.get(envelope.bytes);
+                            envelopes.put(envelope); // There are only a few more envelopes than backlog slots, so this never waits for long
+                        }
+
+                        nodesActivity.put(socketAddress.toString(), System.currentTimeMillis());
                     }
 
+                } catch (final ClosedChannelException e) {
+
+                    break;
+
                 } catch (final Exception e) {
 
                     e.printStackTrace();
@@ -60,52 +93,105 @@ class Node {
 
         }, "Packets Receiver")).start();
 
-        (new Thread(() -> {
+        for (int i = Math.max(1, Configuration.packetsProcessors()); i-- > 0; ) {
 
-            while (!shuttingDown) {
+            (new Thread(() -> {
 
-                try {
+                while (!shuttingDown) {
 
-                    final Envelope envelope = envelopes.take();
+                    try {
 
-                    final Transaction receivedTransaction = new Transaction(envelope.trits);
-                    if (receivedTransaction.valid()) {
+                        final Envelope envelope = envelopes.poll(1, TimeUnit.SECONDS);
+                        if (envelope != null) {
 
-                        Tangle.add(receivedTransaction);
+                            try {
 
-                        final Hash requestedHash = new Hash(envelope.trits, Transaction.SIZE);
-                        final long transactionPointer = requestedHash.equals(receivedTransaction.hash())
-                                ?
-                                Storage.transactionPointer(TipsSelector.randomTip().bytes)
-                                :
-                                (requestedHash.equals(Hash.NULL_HASH) ? 0 : Storage.transactionPointer(requestedHash.bytes));
-                        if (transactionPointer > Storage.CELLS_OFFSET - Storage.SUPER_GROUPS_OFFSET) {
+                                process(envelope);
 
-                            send(envelope.socketAddress, Storage.loadTransaction(transactionPointer).bytes);
+                            } finally {
+
+                                envelope.socketAddress = null;
+                                freeEnvelopes.offer(envelope);
+                            }
                         }
-                    }
 
-                } catch (final Exception e) {
+                    } catch (final Exception e) {
 
-                    e.printStackTrace();
+                        e.printStackTrace();
+                    }
                 }
+
+            }, "Packets Processor")).start();
+        }
+    }
+
+    private static void process(final Envelope envelope) { // Decoding and validation run in parallel, only Tangle.add is serialized
+
+        final long transactionPointer;
+        if (requestOnly(envelope.bytes)) { // A null transaction only carries a request
+
+            final Hash requestedHash = requestedHash(envelope);
+            transactionPointer = requestedHash.equals(Hash.NULL_HASH) ? 0 : Storage.transactionPointer(requestedHash.bytes);
+
+        } else {
+
+            final Transaction receivedTransaction = new Transaction(envelope.bytes);
+            if (!receivedTransaction.valid()) {
+
+                return;
             }
 
-        }, "Packets Processor")).start();
+            Tangle.add(receivedTransaction);
+
+            final Hash requestedHash = requestedHash(envelope);
+            transactionPointer = requestedHash.equals(receivedTransaction.hash())
+                    ?
+                    Storage.transactionPointer(TipsSelector.randomTip().bytes)
+                    :
+                    (requestedHash.equals(Hash.NULL_HASH) ? 0 : Storage.transactionPointer(requestedHash.bytes));
+        }
+
+        if (transactionPointer > Storage.CELLS_OFFSET - Storage.SUPER_GROUPS_OFFSET) {
+
+            send(envelope.socketAddress, Storage.loadTransaction(transactionPointer).bytes);
+        }
+    }
+
+    private static boolean requestOnly(final byte[] packet) {
+
+        for (int i = 0; i < Transaction.SIZE_IN_BYTES - 1; i++) {
+
+            if (packet[i] != 0) {
+
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static Hash requestedHash(final Envelope envelope) {
+
+        Converter.trits(envelope.bytes, Transaction.SIZE, Bastard.HASH_SIZE, envelope.requestedHashTrits, 0);
+
+        return new Hash(envelope.requestedHashTrits, 0);
     }
 
     static void send(final SocketAddress node, final byte[] bytes) {
 
         try {
 
-            System.arraycopy(bytes, 0, sendingPacket.getData(), 0, Transaction.SIZE_IN_BYTES);
-
             final int[] transactionsToRequest = new int[Transaction.SIZE % Converter.NUMBER_OF_TRITS_IN_A_BYTE + Bastard.HASH_SIZE];
             System.arraycopy(Storage.transactionToRequest().trits(), 0, transactionsToRequest, Transaction.SIZE % Converter.NUMBER_OF_TRITS_IN_A_BYTE, Bastard.HASH_SIZE);
-            System.arraycopy(Converter.bytes(transactionsToRequest), 0, sendingPacket.getData(), Transaction.SIZE_IN_BYTES - 1, Converter.sizeInBytes(Transaction.SIZE % Converter.NUMBER_OF_TRITS_IN_A_BYTE + Bastard.HASH_SIZE)); // The last byte of a valid transaction is always zero, we can overwrite it
 
-            sendingPacket.setSocketAddress(node);
-            socket.send(sendingPacket);
+            final ByteBuffer buffer = sendingBuffer.get();
+            buffer.clear();
+            buffer.put(bytes, 0, Transaction.SIZE_IN_BYTES - 1); // The last byte of a valid transaction is always zero, we can overwrite it
+            buffer.put(Converter.bytes(transactionsToRequest), 0, Converter.sizeInBytes(Transaction.SIZE % Converter.NUMBER_OF_TRITS_IN_A_BYTE + Bastard.HASH_SIZE));
+            buffer.flip();
+
+            channel.send(buffer, node);
+            lastSendTimes.put(node, System.currentTimeMillis());
 
         } catch (final IOException e) {
 
@@ -124,11 +210,24 @@ class Node {
     static void shutDown() {
 
         shuttingDown = true;
+
+        try {
+
+            if (channel != null) {
+
+                channel.close();
+            }
+
+        } catch (final IOException e) {
+
+            e.printStackTrace();
+        }
     }
 
-    private static final class Envelope {
+    static final class Envelope {
 
-        final SocketAddress socketAddress = receivingPacket.getSocketAddress();
-        final int[] trits = Converter.trits(receivingPacket.getData(), PACKET_SIZE_IN_TRITS);
+        SocketAddress socketAddress;
+        final byte[] bytes = new byte[PACKET_SIZE_IN_BYTES];
+        final int[] requestedHashTrits = new int[Bastard.HASH_SIZE]; // Only the tail of the packet is decoded here, the transaction decodes the rest into its own trits
     }
 }
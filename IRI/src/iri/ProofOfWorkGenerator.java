@@ -1,5 +1,8 @@
 package iri;
 
+import java.util.*;
+import java.util.concurrent.*;
+
 public final class ProofOfWorkGenerator {
 
     public static final int[] ZEROED_STATE = new int[729];
@@ -37,90 +40,90 @@ public final class ProofOfWorkGenerator {
         }
     }
 
+    public static final int NUMBER_OF_LANES = Long.SIZE;
+    public static final int LANE_NONCE_SIZE = 4; // 3^4 nonce variants are enough to give every lane its own one
+    public static final int WORKER_NONCE_SIZE = 5;
+    public static final int MAX_NUMBER_OF_WORKERS = 243; // 3^WORKER_NONCE_SIZE
+
     public static final int[] state = new int[729], stateCopy = new int[729];
-    public static final int[] midState = new int[729];
+
+    static final int numberOfWorkers = Math.max(1, Math.min(Configuration.powWorkers(), MAX_NUMBER_OF_WORKERS));
+    static final ExecutorService workers = Executors.newFixedThreadPool(numberOfWorkers, runnable -> {
+
+        final Thread thread = new Thread(runnable, "Proof-of-Work Worker");
+        thread.setDaemon(true);
+
+        return thread;
+    });
 
     public static void measureHashingPower(final int numberOfTransforms) {
 
         System.out.println("Measuring hashing power...");
-        final long beginningTime = System.currentTimeMillis();
+        long beginningTime = System.currentTimeMillis();
         int counter = 0;
         while (++counter < numberOfTransforms) {
 
             transform();
         }
-        System.out.println("Hashing power = " + ((double)((counter * Runtime.getRuntime().availableProcessors() * 10) / (System.currentTimeMillis() - beginningTime))) / 10 + " kH/s");
-    }
+        final double scalarHashingPower = ((double)((counter * (long)Runtime.getRuntime().availableProcessors() * 10) / (System.currentTimeMillis() - beginningTime + 1))) / 10;
+        System.out.println("Hashing power = " + scalarHashingPower + " kH/s");
 
-    public static void doWork(final int[] transactionTrits, final int minWeightMagnitude) {
-
-        System.arraycopy(transactionTrits, Transaction.VALUE_OFFSET, midState, 0, Transaction.VALUE_SIZE + Transaction.TIMESTAMP_SIZE + Transaction.INDEX_SIZE + Transaction.SIGNATURE_NONCE_SIZE);
-        for (int i = Transaction.APPROVAL_NONCE_OFFSET - Transaction.VALUE_OFFSET; i < Transaction.APPROVAL_NONCE_OFFSET - Transaction.VALUE_OFFSET + Transaction.APPROVAL_NONCE_SIZE; i++) {
+        final Searcher measuringSearcher = new Searcher();
+        beginningTime = System.currentTimeMillis();
+        counter = 0;
+        while (++counter < numberOfTransforms) {
 
-            midState[i] = Utils.randomTrit();
+            measuringSearcher.transform();
         }
+        final double bitslicedHashingPower = ((double)((counter * (long)NUMBER_OF_LANES * Runtime.getRuntime().availableProcessors() * 10) / (System.currentTimeMillis() - beginningTime + 1))) / 10;
+        System.out.println("Bit-sliced hashing power = " + bitslicedHashingPower + " kH/s (x" + Math.round(bitslicedHashingPower / scalarHashingPower) + ")");
+    }
 
-        reset();
-        absorb(transactionTrits, 0, Transaction.SIGNATURE_MESSAGE_CHUNK_SIZE + Transaction.DIGEST_SIZE + Transaction.ADDRESS_SIZE);
-        System.arraycopy(state, 243, midState, 243, 729 - 243);
+    public static void doWork(final int[] transactionTrits, final int minWeightMagnitude) {
 
-        while (true) {
+        final Future<int[]> search = search(transactionTrits, minWeightMagnitude);
+        try {
 
-            for (int i = Transaction.APPROVAL_NONCE_OFFSET - Transaction.VALUE_OFFSET; i < Transaction.APPROVAL_NONCE_OFFSET - Transaction.VALUE_OFFSET + Transaction.APPROVAL_NONCE_SIZE; i++) {
+            System.arraycopy(search.get(), Transaction.APPROVAL_NONCE_OFFSET, transactionTrits, Transaction.APPROVAL_NONCE_OFFSET, Transaction.APPROVAL_NONCE_SIZE);
 
-                if (++midState[i] > Converter.MAX_TRIT_VALUE) {
+        } catch (final InterruptedException | ExecutionException e) {
 
-                    midState[i] = Converter.MIN_TRIT_VALUE;
+            search.cancel(true); // The searchers stop as soon as the result is done
+            if (e instanceof InterruptedException) {
 
-                } else {
-
-                    break;
-                }
+                Thread.currentThread().interrupt();
             }
-            System.arraycopy(midState, 0, state, 0, 729);
-            transform();
-
-            System.arraycopy(transactionTrits, Transaction.APPROVED_TRUNK_TRANSACTION_OFFSET, state, 0, 243);
-            transform();
 
-            System.arraycopy(transactionTrits, Transaction.APPROVED_BRANCH_TRANSACTION_OFFSET, state, 0, 243);
-            transform();
+            throw new IllegalStateException("Proof-of-work hasn't been done", e);
+        }
+    }
 
-            boolean completed = true;
-            for (int i = 243 - minWeightMagnitude; i < 243; i++) {
+    public static Future<int[]> search(final int[] transactionTrits, final int minWeightMagnitude) { // The result is a copy of "transactionTrits" with the found approval nonce
 
-                if (state[i] != 0) {
+        final int[] trits = Arrays.copyOf(transactionTrits, Transaction.SIZE);
+        final CompletableFuture<int[]> result = new CompletableFuture<>();
+        for (int i = 0; i < numberOfWorkers; i++) {
 
-                    completed = false;
+            final int worker = i;
+            workers.execute(() -> {
 
-                    break;
-                }
-            }
-            if (completed) {
+                try {
 
-                break;
-            }
-        }
+                    (new Searcher()).search(trits, minWeightMagnitude, worker, result);
 
-        System.arraycopy(midState, Transaction.APPROVAL_NONCE_OFFSET - Transaction.VALUE_OFFSET, transactionTrits, Transaction.APPROVAL_NONCE_OFFSET, Transaction.APPROVAL_NONCE_SIZE);
-    }
+                } catch (final Throwable e) {
 
-    private static void reset() {
+                    result.completeExceptionally(e);
+                }
+            });
+        }
 
-        System.arraycopy(ZEROED_STATE, 0, state, 0, 729);
+        return result;
     }
 
-    private static void absorb(final int[] input, int offset, int size) {
+    static void shutDown() {
 
-        do {
-
-            System.arraycopy(input, offset, state, 0, size < 243 ? size : 243);
-
-            transform();
-
-            offset += 243;
-
-        } while ((size -= 243) > 0);
+        workers.shutdownNow();
     }
 
     public static void transform() {
@@ -169,4 +172,163 @@ public final class ProofOfWorkGenerator {
 
         return F[a + (b << 2) + (c << 4) + 21];
     }
+
+    /**
+     * Bit-sliced Bastard sponge evaluating {@link #NUMBER_OF_LANES} nonces per transform.
+     * Every trit is kept as a pair of bits spread over the low and the high words: 1 = (0, 1), -1 = (1, 0), 0 = (1, 1).
+     */
+    static final class Searcher {
+
+        final long[] stateLow = new long[729], stateHigh = new long[729];
+        final long[] stateCopyLow = new long[729], stateCopyHigh = new long[729];
+        final long[] midStateLow = new long[729], midStateHigh = new long[729];
+        final long[] approvedTrunkTransactionLow = new long[243], approvedTrunkTransactionHigh = new long[243];
+        final long[] approvedBranchTransactionLow = new long[243], approvedBranchTransactionHigh = new long[243];
+
+        final int[] midState = new int[729];
+
+        void search(final int[] transactionTrits, final int minWeightMagnitude, final int worker, final CompletableFuture<int[]> result) {
+
+            System.arraycopy(transactionTrits, Transaction.VALUE_OFFSET, midState, 0, Transaction.VALUE_SIZE + Transaction.TIMESTAMP_SIZE + Transaction.INDEX_SIZE + Transaction.SIGNATURE_NONCE_SIZE);
+            for (int i = Transaction.APPROVAL_NONCE_OFFSET - Transaction.VALUE_OFFSET; i < Transaction.APPROVAL_NONCE_OFFSET - Transaction.VALUE_OFFSET + Transaction.APPROVAL_NONCE_SIZE; i++) {
+
+                midState[i] = Utils.randomTrit();
+            }
+
+            final Bastard bastard = new Bastard();
+            bastard.absorb(transactionTrits, 0, Transaction.SIGNATURE_MESSAGE_CHUNK_SIZE + Transaction.DIGEST_SIZE + Transaction.ADDRESS_SIZE);
+            System.arraycopy(bastard.state, 243, midState, 243, 729 - 243);
+
+            spread(midState, 0, midStateLow, midStateHigh, 729);
+            spread(transactionTrits, Transaction.APPROVED_TRUNK_TRANSACTION_OFFSET, approvedTrunkTransactionLow, approvedTrunkTransactionHigh, 243);
+            spread(transactionTrits, Transaction.APPROVED_BRANCH_TRANSACTION_OFFSET, approvedBranchTransactionLow, approvedBranchTransactionHigh, 243);
+
+            final int[] laneNonce = new int[LANE_NONCE_SIZE];
+            Arrays.fill(laneNonce, Converter.MIN_TRIT_VALUE);
+            for (int lane = 0; lane < NUMBER_OF_LANES; lane++) {
+
+                for (int i = 0; i < LANE_NONCE_SIZE; i++) {
+
+                    final long bit = 1L << lane;
+                    final int offset = Transaction.APPROVAL_NONCE_OFFSET - Transaction.VALUE_OFFSET + i;
+                    midStateLow[offset] = laneNonce[i] == 1 ? (midStateLow[offset] & ~bit) : (midStateLow[offset] | bit);
+                    midStateHigh[offset] = laneNonce[i] == -1 ? (midStateHigh[offset] & ~bit) : (midStateHigh[offset] | bit);
+                }
+                Utils.increment(laneNonce, 0, LANE_NONCE_SIZE);
+            }
+
+            final int[] workerNonce = Converter.trits(worker - MAX_NUMBER_OF_WORKERS / 2, WORKER_NONCE_SIZE);
+            System.arraycopy(workerNonce, 0, midState, Transaction.APPROVAL_NONCE_OFFSET - Transaction.VALUE_OFFSET + LANE_NONCE_SIZE, WORKER_NONCE_SIZE);
+            spread(midState, Transaction.APPROVAL_NONCE_OFFSET - Transaction.VALUE_OFFSET + LANE_NONCE_SIZE, midStateLow, midStateHigh, Transaction.APPROVAL_NONCE_OFFSET - Transaction.VALUE_OFFSET + LANE_NONCE_SIZE, WORKER_NONCE_SIZE);
+
+            while (!result.isDone()) {
+
+                for (int i = Transaction.APPROVAL_NONCE_OFFSET - Transaction.VALUE_OFFSET + LANE_NONCE_SIZE + WORKER_NONCE_SIZE; i < Transaction.APPROVAL_NONCE_OFFSET - Transaction.VALUE_OFFSET + Transaction.APPROVAL_NONCE_SIZE; i++) {
+
+                    final boolean carry;
+                    if (++midState[i] > Converter.MAX_TRIT_VALUE) {
+
+                        midState[i] = Converter.MIN_TRIT_VALUE;
+                        carry = true;
+
+                    } else {
+
+                        carry = false;
+                    }
+                    spread(midState, i, midStateLow, midStateHigh, i, 1);
+
+                    if (!carry) {
+
+                        break;
+                    }
+                }
+                System.arraycopy(midStateLow, 0, stateLow, 0, 729);
+                System.arraycopy(midStateHigh, 0, stateHigh, 0, 729);
+                transform();
+
+                System.arraycopy(approvedTrunkTransactionLow, 0, stateLow, 0, 243);
+                System.arraycopy(approvedTrunkTransactionHigh, 0, stateHigh, 0, 243);
+                transform();
+
+                System.arraycopy(approvedBranchTransactionLow, 0, stateLow, 0, 243);
+                System.arraycopy(approvedBranchTransactionHigh, 0, stateHigh, 0, 243);
+                transform();
+
+                long completedLanes = -1;
+                for (int i = 243 - minWeightMagnitude; i < 243 && completedLanes != 0; i++) {
+
+                    completedLanes &= stateLow[i] & stateHigh[i];
+                }
+                if (completedLanes != 0) {
+
+                    final int[] trits = Arrays.copyOf(transactionTrits, Transaction.SIZE);
+                    final int lane = Long.numberOfTrailingZeros(completedLanes);
+                    for (int i = 0; i < Transaction.APPROVAL_NONCE_SIZE; i++) {
+
+                        final int offset = Transaction.APPROVAL_NONCE_OFFSET - Transaction.VALUE_OFFSET + i;
+                        trits[Transaction.APPROVAL_NONCE_OFFSET + i] = (int)((midStateHigh[offset] >>> lane) & 1) - (int)((midStateLow[offset] >>> lane) & 1);
+                    }
+                    result.complete(trits);
+
+                    break;
+                }
+            }
+        }
+
+        void transform() {
+
+            System.arraycopy(stateLow, 0, stateCopyLow, 0, 729);
+            System.arraycopy(stateHigh, 0, stateCopyHigh, 0, 729);
+
+            round(stateCopyLow, stateCopyHigh, stateLow, stateHigh, ROUND_0_BETA_INDICES, ROUND_0_GAMMA_INDICES);
+            round(stateLow, stateHigh, stateCopyLow, stateCopyHigh, ROUND_1_BETA_INDICES, ROUND_1_GAMMA_INDICES);
+            round(stateCopyLow, stateCopyHigh, stateLow, stateHigh, ROUND_2_BETA_INDICES, ROUND_2_GAMMA_INDICES);
+            round(stateLow, stateHigh, stateCopyLow, stateCopyHigh, ROUND_3_BETA_INDICES, ROUND_3_GAMMA_INDICES);
+            round(stateCopyLow, stateCopyHigh, stateLow, stateHigh, ROUND_4_BETA_INDICES, ROUND_4_GAMMA_INDICES);
+            round(stateLow, stateHigh, stateCopyLow, stateCopyHigh, ROUND_5_BETA_INDICES, ROUND_5_GAMMA_INDICES);
+            round(stateCopyLow, stateCopyHigh, stateLow, stateHigh, ROUND_0_BETA_INDICES, ROUND_0_GAMMA_INDICES);
+            round(stateLow, stateHigh, stateCopyLow, stateCopyHigh, ROUND_1_BETA_INDICES, ROUND_1_GAMMA_INDICES);
+            round(stateCopyLow, stateCopyHigh, stateLow, stateHigh, ROUND_2_BETA_INDICES, ROUND_2_GAMMA_INDICES);
+        }
+
+        private static void round(final long[] sourceLow, final long[] sourceHigh, final long[] destinationLow, final long[] destinationHigh,
+                                  final int[] betaIndices, final int[] gammaIndices) {
+
+            for (int i = 0; i < 729; i++) {
+
+                final long alphaLow = sourceLow[i], alphaHigh = sourceHigh[i];
+                final long betaLow = sourceLow[betaIndices[i]], betaHigh = sourceHigh[betaIndices[i]];
+                final long gammaLow = sourceLow[gammaIndices[i]], gammaHigh = sourceHigh[gammaIndices[i]];
+
+                // F depends only on alpha and on beta + gamma, so the sum is classified first
+                final long betaZero = betaLow & betaHigh, gammaZero = gammaLow & gammaHigh;
+                final long sumIsMinus2 = ~betaHigh & ~gammaHigh;
+                final long sumIsMinus1 = (~betaHigh & gammaZero) | (betaZero & ~gammaHigh);
+                final long sumIs0 = (~betaHigh & ~gammaLow) | (betaZero & gammaZero) | (~betaLow & ~gammaHigh);
+                final long sumIs1 = (~betaLow & gammaZero) | (betaZero & ~gammaLow);
+                final long sumIs2 = ~betaLow & ~gammaLow;
+
+                final long alphaZero = alphaLow & alphaHigh;
+                final long resultIs1 = (~alphaHigh & (sumIsMinus2 | sumIs1)) | (alphaZero & (sumIsMinus1 | sumIs2)) | (~alphaLow & sumIs0);
+                final long resultIsMinus1 = (alphaZero & (sumIsMinus2 | sumIs1)) | (~alphaHigh & (sumIs0 | sumIs2)) | (~alphaLow & sumIs1);
+
+                destinationLow[i] = ~resultIs1;
+                destinationHigh[i] = ~resultIsMinus1;
+            }
+        }
+
+        private static void spread(final int[] trits, final int offset, final long[] low, final long[] high, final int size) {
+
+            spread(trits, offset, low, high, 0, size);
+        }
+
+        private static void spread(final int[] trits, final int offset, final long[] low, final long[] high, final int destinationOffset, final int size) {
+
+            for (int i = 0; i < size; i++) {
+
+                low[destinationOffset + i] = trits[offset + i] == 1 ? 0 : -1;
+                high[destinationOffset + i] = trits[offset + i] == -1 ? 0 : -1;
+            }
+        }
+    }
 }
@@ -1,23 +1,40 @@
 package iri;
 
+import java.net.*;
 import java.util.concurrent.*;
 
 class Rebroadcaster {
 
+    static final int MIN_IDLE_PERIOD = 1000, MAX_IDLE_PERIOD = 64000; // Bounds of the silence after which a neighbour gets a null transaction
+
     private static boolean shuttingDown;
 
     private static final BlockingQueue<byte[]> transactionsBytes = new LinkedBlockingQueue<>();
 
+    private static int idlePeriod = MIN_IDLE_PERIOD;
+
     public static void launch() {
 
         (new Thread(() -> {
 
+            long checkTime = System.currentTimeMillis();
+
             while (!shuttingDown) {
 
                 try {
 
-                    final byte[] transactionBytes = transactionsBytes.poll(1, TimeUnit.SECONDS);
-                    Node.broadcast(transactionBytes == null ? Transaction.NULL_TRANSACTION_BYTES : transactionBytes);
+                    final byte[] transactionBytes = transactionsBytes.poll(MIN_IDLE_PERIOD, TimeUnit.MILLISECONDS);
+                    if (transactionBytes != null) {
+
+                        Node.broadcast(transactionBytes);
+                    }
+
+                    final long time = System.currentTimeMillis();
+                    if (time - checkTime >= MIN_IDLE_PERIOD) {
+
+                        checkTime = time;
+                        pingIdleNodes(time);
+                    }
 
                 } catch (final Exception e) {
 
@@ -28,6 +45,31 @@ class Rebroadcaster {
         }, "Rebroadcaster")).start();
     }
 
+    private static void pingIdleNodes(final long time) { // Real traffic already carries requests, null transactions only go to the neighbours it missed
+
+        final boolean somethingToRequest = Storage.numberOfTransactionsToRequest > 1;
+        if (somethingToRequest) {
+
+            idlePeriod = MIN_IDLE_PERIOD;
+        }
+
+        boolean pinged = false;
+        for (final SocketAddress node : Node.nodes) {
+
+            final Long lastSendTime = Node.lastSendTimes.get(node);
+            if (lastSendTime == null || time - lastSendTime >= idlePeriod) {
+
+                Node.send(node, Transaction.NULL_TRANSACTION_BYTES);
+                pinged = true;
+            }
+        }
+
+        if (pinged && !somethingToRequest) { // Nothing to request, so keep-alives can become rarer
+
+            idlePeriod = Math.min(idlePeriod * 2, MAX_IDLE_PERIOD);
+        }
+    }
+
     public static void shutDown() {
 
         shuttingDown = true;
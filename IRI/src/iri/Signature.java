@@ -2,6 +2,7 @@ package iri;
 
 import java.math.BigInteger;
 import java.util.Arrays;
+import java.util.concurrent.*;
 
 public class Signature {
 
@@ -18,7 +19,10 @@ public class Signature {
         final BigInteger seedAsNumber = Converter.bigIntegerValue(seed);
         final BigInteger subseedPreimage = seedAsNumber.add(BigInteger.valueOf(index));
 
-        return Bastard.hash(Converter.trits(subseedPreimage, Bastard.HASH_SIZE), 0, Bastard.HASH_SIZE).trits();
+        final int[] subseed = Converter.trits(subseedPreimage, Bastard.HASH_SIZE);
+        Bastard.hash(subseed, 0, Bastard.HASH_SIZE, subseed, 0);
+
+        return subseed;
     }
 
     public static int[][] privateKey(final int[] subseed, final int securityLevel) {
@@ -40,18 +44,20 @@ public class Signature {
 
     public static int[] publicKey(final int[][] privateKey) {
 
-        final Bastard bastard = new Bastard();
-        for (final int[] privateKeyChunk : privateKey) {
+        final int[] buffer = new int[privateKey.length * PRIVATE_KEY_CHUNK_SIZE]; // All chunks at once, so their chains run in parallel too
+        final int[] hashChainLengths = new int[privateKey.length * PRIVATE_KEY_CHUNK_LENGTH];
+        for (int i = 0; i < privateKey.length; i++) {
 
-            final int[] hashChainLengths = new int[PRIVATE_KEY_CHUNK_LENGTH];
-            for (int j = 0; j < PRIVATE_KEY_CHUNK_LENGTH; j++) {
+            System.arraycopy(privateKey[i], 0, buffer, i * PRIVATE_KEY_CHUNK_SIZE, PRIVATE_KEY_CHUNK_SIZE);
+        }
+        Arrays.fill(hashChainLengths, Converter.MAX_TRYTE_VALUE - Converter.MIN_TRYTE_VALUE);
+        transform(buffer, hashChainLengths);
 
-                hashChainLengths[j] = Converter.MAX_TRYTE_VALUE - Converter.MIN_TRYTE_VALUE;
-            }
-            final int[] buffer = Arrays.copyOf(privateKeyChunk, PRIVATE_KEY_CHUNK_SIZE);
-            transform(buffer, hashChainLengths);
-            final int[] publicKeyChunk = Bastard.hash(buffer, 0, PRIVATE_KEY_CHUNK_SIZE).trits();
+        final Bastard bastard = new Bastard();
+        final int[] publicKeyChunk = new int[Bastard.HASH_SIZE];
+        for (int i = 0; i < privateKey.length; i++) {
 
+            Bastard.hash(buffer, i * PRIVATE_KEY_CHUNK_SIZE, PRIVATE_KEY_CHUNK_SIZE, publicKeyChunk, 0);
             bastard.absorb(publicKeyChunk, 0, Bastard.HASH_SIZE);
         }
 
@@ -90,17 +96,46 @@ public class Signature {
         final int[] buffer = Arrays.copyOfRange(signature, 0, PRIVATE_KEY_CHUNK_SIZE);
         transform(buffer, hashChainLengths);
 
-        return Bastard.hash(buffer, 0, PRIVATE_KEY_CHUNK_SIZE).trits();
+        final int[] publicKeyChunk = new int[Bastard.HASH_SIZE];
+        Bastard.hash(buffer, 0, PRIVATE_KEY_CHUNK_SIZE, publicKeyChunk, 0);
+
+        return publicKeyChunk;
     }
 
-    private static void transform(final int[] buffer, final int[] hashChainLengths) {
+    private static void transform(final int[] buffer, final int[] hashChainLengths) { // Fragment #i of "buffer" is hashed "hashChainLengths[i]" times in place
 
-        for (int i = 0; i < PRIVATE_KEY_CHUNK_LENGTH; i++) {
+        ForkJoinPool.commonPool().invoke(new HashChains(buffer, hashChainLengths, 0, hashChainLengths.length));
+    }
+
+    private static final class HashChains extends RecursiveAction { // The chains of different fragments are independent
+
+        private static final long serialVersionUID = 1L; // Never serialized, ForkJoinTask is just Serializable
+
+        private final int[] buffer;
+        private final int[] hashChainLengths;
+        private final int from, to;
+
+        HashChains(final int[] buffer, final int[] hashChainLengths, final int from, final int to) {
+
+            this.buffer = buffer;
+            this.hashChainLengths = hashChainLengths;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+
+            if (to - from > 1) {
+
+                invokeAll(new HashChains(buffer, hashChainLengths, from, (from + to) >>> 1), new HashChains(buffer, hashChainLengths, (from + to) >>> 1, to));
+
+            } else {
 
-            for (int j = hashChainLengths[i]; j-- > 0; ) {
+                for (int j = hashChainLengths[from]; j-- > 0; ) {
 
-                System.arraycopy(Bastard.hash(buffer, i * PRIVATE_KEY_FRAGMENT_SIZE, PRIVATE_KEY_FRAGMENT_SIZE).trits(), 0,
-                        buffer, i * PRIVATE_KEY_FRAGMENT_SIZE, PRIVATE_KEY_FRAGMENT_SIZE);
+                    Bastard.hash(buffer, from * PRIVATE_KEY_FRAGMENT_SIZE, PRIVATE_KEY_FRAGMENT_SIZE, buffer, from * PRIVATE_KEY_FRAGMENT_SIZE);
+                }
             }
         }
     }
@@ -4,8 +4,10 @@ import java.io.*;
 import java.nio.*;
 import java.nio.channels.*;
 import java.nio.file.*;
-import java.util.Arrays;
+import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.locks.*;
+import java.util.function.*;
 
 class Storage {
 
@@ -33,16 +35,26 @@ class Storage {
     public static final String ADDRESSES_FILE_NAME = "addresses.iri";
     public static final String DIGESTS_FILE_NAME = "digests.iri";
     public static final String SCRATCHPAD_FILE_NAME = "scratchpad.iri";
+    public static final String APPROVERS_FILE_NAME = "approvers.iri";
+    public static final String BALANCES_FILE_NAME = "balances.iri";
+    public static final String INCLUDED_FILE_NAME = "included.iri";
+
+    public static final int BALANCES_HIGH_WATER_MARK_OFFSET = 0; // Address cells never start at 0, the slot keeps "transactionsNextPointer" as of the latest clean shutdown and 0 while running
 
     public static final int ZEROTH_POINTER_OFFSET = 64;
 
+    public static final int CONSISTENCY_CHECK_PERIOD = 60000;
+    public static final int REQUESTS_REBUILDING_PERIOD = 5000;
+
+    public static final int APPROVERS_BLOCK_SIZE = 8 * Long.BYTES; // 7 approvers and the pointer to the previous block of the same list
+
     static FileChannel transactionsChannel;
     static ByteBuffer transactionsCellsStates;
     static ByteBuffer transactionsTipsFlags;
     static final ByteBuffer[] transactionsChunks = new ByteBuffer[MAX_NUMBER_OF_CHUNKS];
     volatile static long transactionsNextPointer = CELLS_OFFSET - SUPER_GROUPS_OFFSET;
     static final byte[] mainBuffer = new byte[CELL_SIZE], mainBufferCopy = new byte[CELL_SIZE], mainBufferCopy2 = new byte[CELL_SIZE];
-    static final byte[] auxBuffer = new byte[CELL_SIZE];
+    static final int[] nonceTrits = new int[Math.max(iri.Transaction.SIGNATURE_NONCE_SIZE, iri.Transaction.APPROVAL_NONCE_SIZE)]; // Used together with "mainBuffer" while dumping a transaction
 
     static FileChannel addressesChannel;
     static final ByteBuffer[] addressesChunks = new ByteBuffer[MAX_NUMBER_OF_CHUNKS];
@@ -52,15 +64,30 @@ class Storage {
     static final ByteBuffer[] digestsChunks = new ByteBuffer[MAX_NUMBER_OF_CHUNKS];
     volatile static long digestsNextPointer = SUPER_GROUPS_SIZE;
 
+    static FileChannel approversChannel;
+    static final ByteBuffer[] approversChunks = new ByteBuffer[MAX_NUMBER_OF_CHUNKS];
+    volatile static long approversNextPointer = APPROVERS_BLOCK_SIZE; // The 0th block is never used, so 0 can mean "no block"
+
+    static FileChannel balancesChannel;
+    static final ByteBuffer[] balancesChunks = new ByteBuffer[MAX_NUMBER_OF_CHUNKS]; // A balance per address cell, the sum of the values of the included transactions with that address
+    static FileChannel includedChannel;
+    static ByteBuffer includedCells; // A bit per cell, set for the transactions whose values are in the balances, only the Updater changes it
+    private static long includedTipsVersion; // The tips the included cells have been extended to, only the Updater uses it
+
     static ByteBuffer scratchpad;
     volatile static int numberOfTransactionsToRequest = 1; // The 0th is NULL_HASH
 
+    private static final BlockingQueue<Long> transactionsToSolidify = new LinkedBlockingQueue<>();
+
     private volatile static boolean shuttingDown;
     private volatile static boolean canBeShutDown;
 
+    private static final StampedLock lock = new StampedLock(); // Only trie-mutating writes take it exclusively, lookups validate optimistically
+    private static final long[] groups = new long[Transaction.HASH_SIZE + 1], approveesGroups = new long[Transaction.HASH_SIZE + 1]; // Group cells met along the latest paths, guarded by the write lock
+
     public static synchronized void launch() throws IOException {
 
-        transactionsChannel = FileChannel.open(Paths.get(TRANSACTIONS_FILE_NAME), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        transactionsChannel = FileChannel.open(Paths.get(Configuration.storageDirectory(), TRANSACTIONS_FILE_NAME), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
         transactionsCellsStates = transactionsChannel.map(FileChannel.MapMode.READ_WRITE, CELLS_STATES_OFFSET, CELLS_STATES_SIZE);
         transactionsTipsFlags = transactionsChannel.map(FileChannel.MapMode.READ_WRITE, TIPS_FLAGS_OFFSET, TIPS_FLAGS_SIZE);
         transactionsChunks[0] = transactionsChannel.map(FileChannel.MapMode.READ_WRITE, SUPER_GROUPS_OFFSET, SUPER_GROUPS_SIZE);
@@ -103,7 +130,7 @@ class Storage {
             transactionsCellsStates.put((byte)1);
         }
 
-        addressesChannel = FileChannel.open(Paths.get(ADDRESSES_FILE_NAME), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        addressesChannel = FileChannel.open(Paths.get(Configuration.storageDirectory(), ADDRESSES_FILE_NAME), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
         addressesChunks[0] = addressesChannel.map(FileChannel.MapMode.READ_WRITE, 0, SUPER_GROUPS_SIZE);
         while (true) {
 
@@ -131,7 +158,7 @@ class Storage {
             addressesNextPointer += CELL_SIZE;
         }
 
-        digestsChannel = FileChannel.open(Paths.get(DIGESTS_FILE_NAME), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        digestsChannel = FileChannel.open(Paths.get(Configuration.storageDirectory(), DIGESTS_FILE_NAME), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
         digestsChunks[0] = digestsChannel.map(FileChannel.MapMode.READ_WRITE, 0, SUPER_GROUPS_SIZE);
         while (true) {
 
@@ -159,7 +186,60 @@ class Storage {
             digestsNextPointer += CELL_SIZE;
         }
 
-        final FileChannel scratchpadChannel = FileChannel.open(Paths.get(SCRATCHPAD_FILE_NAME), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        approversChannel = FileChannel.open(Paths.get(Configuration.storageDirectory(), APPROVERS_FILE_NAME), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        approversChunks[0] = approversChannel.map(FileChannel.MapMode.READ_WRITE, 0, CHUNK_SIZE);
+        while (true) {
+
+            if ((approversNextPointer & (CHUNK_SIZE - 1)) == 0) {
+
+                approversChunks[(int)(approversNextPointer >> 27)] = approversChannel.map(FileChannel.MapMode.READ_WRITE, approversNextPointer, CHUNK_SIZE);
+            }
+
+            if (value(approversChunks[(int)(approversNextPointer >> 27)], (int)(approversNextPointer & (CHUNK_SIZE - 1))) == 0) { // The 1st slot of a block is filled when the block is appended
+
+                break;
+            }
+
+            approversNextPointer += APPROVERS_BLOCK_SIZE;
+        }
+        if (approversNextPointer == APPROVERS_BLOCK_SIZE) { // The index is missing, rebuild it from the cells
+
+            for (long pointer = CELLS_OFFSET - SUPER_GROUPS_OFFSET; pointer < transactionsNextPointer; pointer += CELL_SIZE) {
+
+                final ByteBuffer chunk = transactionsChunks[(int)(pointer >> 27)];
+                final int offset = (int)(pointer & (CHUNK_SIZE - 1));
+                if (chunk.get(offset + Transaction.TYPE_OFFSET) != GROUP) {
+
+                    setValue(chunk, offset + Transaction.APPROVERS_POINTER_OFFSET, 0);
+                }
+            }
+
+            for (long pointer = CELLS_OFFSET - SUPER_GROUPS_OFFSET; pointer < transactionsNextPointer; pointer += CELL_SIZE) {
+
+                final ByteBuffer chunk = transactionsChunks[(int)(pointer >> 27)];
+                final int offset = (int)(pointer & (CHUNK_SIZE - 1));
+                if (chunk.get(offset + Transaction.TYPE_OFFSET) != GROUP && value(chunk, offset + Transaction.REQUEST_RATING_OFFSET) == 0) {
+
+                    addApprover(value(chunk, offset + Transaction.APPROVED_TRUNK_TRANSACTION_POINTER_OFFSET), value(chunk, offset + Transaction.APPROVED_BRANCH_TRANSACTION_POINTER_OFFSET), pointer);
+                }
+            }
+        }
+
+        balancesChannel = FileChannel.open(Paths.get(Configuration.storageDirectory(), BALANCES_FILE_NAME), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        includedChannel = FileChannel.open(Paths.get(Configuration.storageDirectory(), INCLUDED_FILE_NAME), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        if (value(balancesChunk(BALANCES_HIGH_WATER_MARK_OFFSET), BALANCES_HIGH_WATER_MARK_OFFSET) != transactionsNextPointer) { // Not shut down cleanly or the cells have changed since, the ledger is rebuilt from the tips by the Updater
+
+            for (int i = 0; i < MAX_NUMBER_OF_CHUNKS; i++) {
+
+                balancesChunks[i] = null;
+            }
+            balancesChannel.truncate(0);
+            includedChannel.truncate(0);
+        }
+        includedCells = includedChannel.map(FileChannel.MapMode.READ_WRITE, 0, CELLS_STATES_SIZE).order(ByteOrder.LITTLE_ENDIAN); // Bit "i" of a long is bit "i & 7" of its byte "i >> 3"
+        setValue(balancesChunk(BALANCES_HIGH_WATER_MARK_OFFSET), BALANCES_HIGH_WATER_MARK_OFFSET, 0);
+
+        final FileChannel scratchpadChannel = FileChannel.open(Paths.get(Configuration.storageDirectory(), SCRATCHPAD_FILE_NAME), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
         scratchpad = scratchpadChannel.map(FileChannel.MapMode.READ_WRITE, 0, SCRATCHPAD_SIZE);
         scratchpadChannel.close();
 
@@ -167,18 +247,57 @@ class Storage {
 
             final byte[] cellsStatesBuffer = new byte[CELLS_STATES_BUFFER_SIZE];
             final byte[] cellsBuffer = new byte[CELLS_BUFFER_SIZE];
-            final byte[] longValueBuffer = new byte[Long.BYTES];
             final byte[] hash = new byte[Transaction.HASH_SIZE];
 
+            long latestConsistencyCheckTime = 0, latestRequestsRebuildingTime = 0;
+
             while (!shuttingDown) {
 
                 try {
 
-                    Thread.sleep(5000);
+                    final Long pointer = transactionsToSolidify.poll(100, TimeUnit.MILLISECONDS);
+                    if (pointer != null) {
+
+                        propagateHeight(pointer);
+
+                        for (final long approverPointer : approveeTransactions(pointer)) {
+
+                            if (included(approverPointer)) { // Filled a cell the included subtangle was waiting for
+
+                                include(pointer);
+
+                                break;
+                            }
+                        }
+                    }
+
+                    final long tipsVersion = TipsSelector.tipsVersion;
+                    if (tipsVersion != includedTipsVersion) {
+
+                        includedTipsVersion = tipsVersion;
+                        for (final Hash tip : TipsSelector.tips()) {
+
+                            include(approveePointer(tip.bytes));
+                        }
+                    }
+
+                    if (System.currentTimeMillis() - latestRequestsRebuildingTime < REQUESTS_REBUILDING_PERIOD) {
+
+                        continue;
+                    }
+                    latestRequestsRebuildingTime = System.currentTimeMillis();
+                    final boolean consistencyCheck = latestRequestsRebuildingTime - latestConsistencyCheckTime >= CONSISTENCY_CHECK_PERIOD;
+                    if (consistencyCheck) {
+
+                        latestConsistencyCheckTime = latestRequestsRebuildingTime;
+                    }
+
+                    final long beginningTime = System.currentTimeMillis(); // Every scan rebuilds the requests from scratch, the consistency check also finalizes whatever the events have missed
 
-                    final long beginningTime = System.currentTimeMillis();
+                    synchronized (scratchpad) {
 
-                    numberOfTransactionsToRequest = 1;
+                        numberOfTransactionsToRequest = 1;
+                    }
 
                     long numberOfNonFinalizedCells = 0, numberOfJustFinalizedCells = 0, numberOfFinalizedCells = 0;
 
@@ -194,7 +313,7 @@ class Storage {
 
                         } else {
 
-                            ((ByteBuffer)transactionsChunks[(int)(firstCellPointer >> 27)].position((int)(firstCellPointer & (CHUNK_SIZE - 1)))).get(cellsBuffer);
+                            ((ByteBuffer)transactionsChunks[(int)(firstCellPointer >> 27)].duplicate().position((int)(firstCellPointer & (CHUNK_SIZE - 1)))).get(cellsBuffer);
 
                             int bit = 1;
                             for (int i = 0; i < Integer.SIZE && firstCellPointer + (i << 11) < maxCellPointer; i++) {
@@ -210,11 +329,14 @@ class Storage {
                                     } else {
 
                                         long requestRating = value(cellsBuffer, (i << 11) + Transaction.REQUEST_RATING_OFFSET);
-                                        if (requestRating == 0) {
+                                        if (requestRating == 0 && !consistencyCheck) {
+
+                                            numberOfNonFinalizedCells++;
+
+                                        } else if (requestRating == 0) {
 
                                             final long approvedTrunkTransactionPointer = value(cellsBuffer, (i << 11) + Transaction.APPROVED_TRUNK_TRANSACTION_POINTER_OFFSET);
-                                            ((ByteBuffer)transactionsChunks[(int)(approvedTrunkTransactionPointer >> 27)].position((int)(approvedTrunkTransactionPointer & (CHUNK_SIZE - 1)))).get(auxBuffer);
-                                            final long approvedTrunkTransactionHeight = value(auxBuffer, Transaction.HEIGHT_OFFSET);
+                                            final long approvedTrunkTransactionHeight = height(approvedTrunkTransactionPointer);
                                             if (approvedTrunkTransactionHeight == 0) {
 
                                                 numberOfNonFinalizedCells++;
@@ -222,16 +344,14 @@ class Storage {
                                             } else {
 
                                                 final long approvedBranchTransactionPointer = value(cellsBuffer, (i << 11) + Transaction.APPROVED_BRANCH_TRANSACTION_POINTER_OFFSET);
-                                                ((ByteBuffer)transactionsChunks[(int)(approvedBranchTransactionPointer >> 27)].position((int)(approvedBranchTransactionPointer & (CHUNK_SIZE - 1)))).get(auxBuffer);
-                                                final long approvedBranchTransactionHeight = value(auxBuffer, Transaction.HEIGHT_OFFSET);
+                                                final long approvedBranchTransactionHeight = height(approvedBranchTransactionPointer);
                                                 if (approvedBranchTransactionHeight == 0) {
 
                                                     numberOfNonFinalizedCells++;
 
                                                 } else {
 
-                                                    setValue(longValueBuffer, 0, approvedTrunkTransactionHeight + 1);
-                                                    ((ByteBuffer)transactionsChunks[(int)(firstCellPointer >> 27)].position((int)(firstCellPointer & (CHUNK_SIZE - 1)) + (i << 11) + Transaction.HEIGHT_OFFSET)).put(longValueBuffer);
+                                                    setHeight(firstCellPointer + (i << 11), approvedTrunkTransactionHeight + 1);
 
                                                     cellsStatesBuffer[i >> 3] |= 1 << (i & 7);
 
@@ -241,13 +361,16 @@ class Storage {
 
                                         } else {
 
-                                            if ((numberOfTransactionsToRequest + requestRating) * Transaction.HASH_SIZE <= SCRATCHPAD_SIZE) {
+                                            synchronized (scratchpad) {
+
+                                                if ((numberOfTransactionsToRequest + requestRating) * Transaction.HASH_SIZE <= SCRATCHPAD_SIZE) {
 
-                                                System.arraycopy(cellsBuffer, (i << 11) + Transaction.HASH_OFFSET, hash, 0, Transaction.HASH_SIZE);
-                                                while (requestRating-- > 0) {
+                                                    System.arraycopy(cellsBuffer, (i << 11) + Transaction.HASH_OFFSET, hash, 0, Transaction.HASH_SIZE);
+                                                    while (requestRating-- > 0) {
 
-                                                    ((ByteBuffer)scratchpad.position(numberOfTransactionsToRequest * Transaction.HASH_SIZE)).put(hash);
-                                                    numberOfTransactionsToRequest++;
+                                                        ((ByteBuffer)scratchpad.position(numberOfTransactionsToRequest * Transaction.HASH_SIZE)).put(hash);
+                                                        numberOfTransactionsToRequest++;
+                                                    }
                                                 }
                                             }
 
@@ -272,6 +395,11 @@ class Storage {
 
                     System.out.println(Thread.currentThread().getName() + ": " + (System.currentTimeMillis() - beginningTime) + " ms (" + numberOfNonFinalizedCells + " -> " + numberOfJustFinalizedCells + " -> " + numberOfFinalizedCells + ") // " + numberOfTransactionsToRequest + " / " + transactionsNextPointer);
 
+                    if (consistencyCheck && includedTipsVersion != 0) {
+
+                        reconcileIncludedCells();
+                    }
+
                 } catch (final Exception e) {
 
                     e.printStackTrace();
@@ -299,6 +427,11 @@ class Storage {
             transactionsChannel.close();
             addressesChannel.close();
             digestsChannel.close();
+            approversChannel.close();
+
+            setValue(balancesChunk(BALANCES_HIGH_WATER_MARK_OFFSET), BALANCES_HIGH_WATER_MARK_OFFSET, transactionsNextPointer);
+            balancesChannel.close();
+            includedChannel.close();
 
             synchronized (Storage.class) {
 
@@ -321,6 +454,22 @@ class Storage {
                     System.out.println("Flushing digests chunk #" + i);
                     ((MappedByteBuffer)digestsChunks[i]).force();
                 }
+
+                for (int i = 0; i < MAX_NUMBER_OF_CHUNKS && approversChunks[i] != null; i++) {
+
+                    System.out.println("Flushing approvers chunk #" + i);
+                    ((MappedByteBuffer)approversChunks[i]).force();
+                }
+
+                for (int i = 0; i < MAX_NUMBER_OF_CHUNKS; i++) {
+
+                    if (balancesChunks[i] != null) {
+
+                        System.out.println("Flushing balances chunk #" + i);
+                        ((MappedByteBuffer)balancesChunks[i]).force();
+                    }
+                }
+                ((MappedByteBuffer)includedCells).force();
             }
 
         } catch (final Exception e) {
@@ -331,34 +480,143 @@ class Storage {
 
     public static synchronized long storeTransaction(final byte[] hash, final iri.Transaction transaction, final boolean tip) { // Returns the pointer or 0 if the transaction was already in the storage and "transaction" value is not null
 
-        long pointer = ((long)((hash[0] + 128) + ((hash[1] + 128) << 8))) << 11, prevPointer = 0;
-        for (int depth = 2; depth < Transaction.HASH_SIZE; depth++) {
+        final long stamp = lock.writeLock();
+        try {
+
+            return store(hash, transaction, tip, 0);
+
+        } finally {
+
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    public static synchronized long[] storeTransactions(final List<iri.Transaction> transactions) { // Returns the pointers in the order of "transactions", 0 for those which were already in the storage
+
+        final byte[][] hashes = new byte[transactions.size()][];
+        final Integer[] order = new Integer[hashes.length];
+        for (int i = 0; i < hashes.length; i++) {
+
+            hashes[i] = transactions.get(i).hash().bytes;
+            order[i] = i;
+        }
+        Arrays.sort(order, (i, j) -> { // Neighbours in this order share the longest prefixes and thus the most of their paths
+
+            for (int k = 0; k < Transaction.HASH_SIZE; k++) {
+
+                if (hashes[i][k] != hashes[j][k]) {
+
+                    return hashes[i][k] - hashes[j][k];
+                }
+            }
+
+            return 0;
+        });
+
+        final long[] pointers = new long[hashes.length];
+        final long stamp = lock.writeLock();
+        try {
+
+            reserve(hashes.length * 3L); // A transaction and two requested approvees
+
+            byte[] prevHash = null;
+            for (final int i : order) {
+
+                int sharedPrefixLength = 0;
+                while (prevHash != null && sharedPrefixLength < Transaction.HASH_SIZE && prevHash[sharedPrefixLength] == hashes[i][sharedPrefixLength]) {
+
+                    sharedPrefixLength++;
+                }
+
+                pointers[i] = store(hashes[i], transactions.get(i), false, sharedPrefixLength);
+                prevHash = hashes[i];
+            }
+
+        } finally {
+
+            lock.unlockWrite(stamp);
+        }
+
+        for (final long pointer : pointers) {
+
+            if (pointer != 0) {
+
+                solidify(pointer);
+            }
+        }
+
+        return pointers;
+    }
+
+    private static long store(final byte[] hash, final iri.Transaction transaction, final boolean tip, final int sharedPrefixLength) { // The walk resumes from the deepest group of the latest path which is also on the path of "hash"
+
+        int depth = depth(groups, sharedPrefixLength);
+        long approvedTrunkTransactionPointer = 0, approvedBranchTransactionPointer = 0;
+        if (transaction != null) {
+
+            if (pointer(hash, groups, depth) > 0) {
+
+                return 0;
+            }
+            depth = depth(groups, Transaction.HASH_SIZE);
+
+            approvedTrunkTransactionPointer = approve(transaction.approvedTrunkTransaction().bytes);
+            approvedBranchTransactionPointer = approve(transaction.approvedBranchTransaction().bytes);
+        }
+
+        final long pointer = store(hash, transaction, tip, groups, depth, approvedTrunkTransactionPointer, approvedBranchTransactionPointer);
+        if (transaction != null) {
 
-            read(pointer);
+            addApprover(approvedTrunkTransactionPointer, approvedBranchTransactionPointer, pointer);
+        }
 
-            if (mainBuffer[Transaction.TYPE_OFFSET] == GROUP) {
+        return pointer;
+    }
 
-                prevPointer = pointer;
-                if ((pointer = value(mainBuffer, (hash[depth] + 128) << 3)) == 0) {
+    private static long approve(final byte[] hash) { // Approvees are stored before the approver takes its slot, otherwise they would be appended into it
+
+        final long pointer = store(hash, null, false, approveesGroups, 2, 0, 0);
+        transactionsTipsFlags.put((int)(pointer >> 3), (byte) (transactionsTipsFlags.get((int)(pointer >> 3)) & (0xFF ^ (1 << (pointer & 7)))));
+
+        return pointer;
+    }
 
-                    setValue(mainBuffer, (hash[depth] + 128) << 3, pointer = transactionsNextPointer);
-                    System.arraycopy(mainBuffer, 0, mainBufferCopy, 0, CELL_SIZE);
+    private static long store(final byte[] hash, final iri.Transaction transaction, final boolean tip, final long[] groups, int depth, final long approvedTrunkTransactionPointer, final long approvedBranchTransactionPointer) {
 
-                    Transaction.dump(hash, transaction);
+        long pointer = depth == 2 ? root(hash) : groups[depth], prevPointer = 0;
+        for (; depth < Transaction.HASH_SIZE; depth++) {
+
+            final ByteBuffer chunk = transactionsChunks[(int)(pointer >> 27)];
+            final int offset = (int)(pointer & (CHUNK_SIZE - 1));
+
+            if (chunk.get(offset + Transaction.TYPE_OFFSET) == GROUP) {
+
+                groups[depth] = prevPointer = pointer;
+                if ((pointer = value(chunk, offset + ((hash[depth] + 128) << 3))) == 0) {
+
+                    pointer = transactionsNextPointer;
+                    Transaction.dump(hash, transaction, approvedTrunkTransactionPointer, approvedBranchTransactionPointer);
                     append();
-                    if (transaction != null) {
+                    if (transaction == null) {
+
+                        request(hash);
+
+                    } else {
 
                         updateAddressAndDigest(transaction, pointer);
                     }
 
-                    System.arraycopy(mainBufferCopy, 0, mainBuffer, 0, CELL_SIZE);
-                    write(prevPointer);
+                    setValue(chunk, offset + ((hash[depth] + 128) << 3), pointer);
+                    groups[depth + 1] = 0;
 
                     return pointer;
                 }
 
             } else {
 
+                groups[depth] = 0;
+                read(pointer);
+
                 for (int i = depth; i < Transaction.HASH_SIZE; i++) {
 
                     if (mainBuffer[Transaction.HASH_OFFSET + i] != hash[i]) {
@@ -379,10 +637,14 @@ class Storage {
                         setValue(mainBuffer, (hash[i] + 128) << 3, transactionsNextPointer + CELL_SIZE);
                         append();
 
-                        Transaction.dump(hash, transaction);
+                        Transaction.dump(hash, transaction, approvedTrunkTransactionPointer, approvedBranchTransactionPointer);
                         pointer = transactionsNextPointer;
                         append();
-                        if (transaction != null) {
+                        if (transaction == null) {
+
+                            request(hash);
+
+                        } else {
 
                             updateAddressAndDigest(transaction, pointer);
                         }
@@ -404,6 +666,7 @@ class Storage {
 
                             setValue(mainBuffer, Transaction.REQUEST_RATING_OFFSET, prevRequestRating + 1);
                             write(pointer);
+                            request(hash);
                         }
                     }
 
@@ -417,7 +680,9 @@ class Storage {
 
                     } else {
 
-                        Transaction.dump(hash, transaction);
+                        final long approversPointer = value(mainBuffer, Transaction.APPROVERS_POINTER_OFFSET); // The transaction could have been approved before it arrived
+                        Transaction.dump(hash, transaction, approvedTrunkTransactionPointer, approvedBranchTransactionPointer);
+                        setValue(mainBuffer, Transaction.APPROVERS_POINTER_OFFSET, approversPointer);
                         write(pointer);
                         updateAddressAndDigest(transaction, pointer);
 
@@ -430,45 +695,300 @@ class Storage {
         throw new IllegalStateException("Corrupted storage");
     }
 
-    public static synchronized long transactionPointer(final byte[] hash) { // Returns a negative value if the transaction hasn't been seen yet but was referenced
+    public static void solidify(final long pointer) { // Queues a just stored transaction for the Storage Updater
+
+        transactionsToSolidify.offer(pointer);
+    }
+
+    private static void propagateHeight(final long pointer) { // Sets the heights of the transaction and of the approvers which have become solid because of it
+
+        final Deque<Long> frontier = new ArrayDeque<>();
+        frontier.push(pointer);
+        while (!frontier.isEmpty()) {
+
+            final long transactionPointer = frontier.pop();
+            final ByteBuffer chunk = transactionsChunks[(int)(transactionPointer >> 27)];
+            final int offset = (int)(transactionPointer & (CHUNK_SIZE - 1));
+            if (chunk.get(offset + Transaction.TYPE_OFFSET) != GROUP && value(chunk, offset + Transaction.REQUEST_RATING_OFFSET) == 0 && value(chunk, offset + Transaction.HEIGHT_OFFSET) == 0) {
+
+                final long approvedTrunkTransactionHeight = height(value(chunk, offset + Transaction.APPROVED_TRUNK_TRANSACTION_POINTER_OFFSET));
+                if (approvedTrunkTransactionHeight != 0 && height(value(chunk, offset + Transaction.APPROVED_BRANCH_TRANSACTION_POINTER_OFFSET)) != 0) {
+
+                    setHeight(transactionPointer, approvedTrunkTransactionHeight + 1);
+                    if (!EventStream.subscribers.isEmpty()) {
+
+                        EventStream.transactionSolidified(hash(chunk, offset + Transaction.HASH_OFFSET, Transaction.HASH_SIZE), hash(chunk, offset + Transaction.ADDRESS_OFFSET, Transaction.ADDRESS_SIZE), value(chunk, offset + Transaction.VALUE_OFFSET),
+                                hash(chunk, offset + Transaction.APPROVED_TRUNK_TRANSACTION_OFFSET, Transaction.APPROVED_TRUNK_TRANSACTION_SIZE), hash(chunk, offset + Transaction.APPROVED_BRANCH_TRANSACTION_OFFSET, Transaction.APPROVED_BRANCH_TRANSACTION_SIZE));
+                    }
+
+                    for (final long approverPointer : approveeTransactions(transactionPointer)) {
+
+                        frontier.push(approverPointer);
+                    }
+                }
+            }
+        }
+    }
+
+    private static boolean included(final long transactionPointer) {
+
+        final int cellIndex = (int)((transactionPointer - (CELLS_OFFSET - SUPER_GROUPS_OFFSET)) >> 11);
+
+        return (includedCells.get(cellIndex >> 3) & (1 << (cellIndex & 7))) != 0;
+    }
+
+    private static void include(final long pointer) { // Credits the transaction and whatever it approves that isn't included yet, stopping at the cells still being requested
+
+        final TransactionView transaction = new TransactionView();
+        final Deque<Long> frontier = new ArrayDeque<>();
+        frontier.push(pointer);
+        while (!frontier.isEmpty()) {
+
+            final long transactionPointer = frontier.pop();
+            if (transactionPointer != 0 && !included(transactionPointer) && transaction.moveTo(transactionPointer).type() != GROUP && transaction.requestRating() == 0) {
+
+                final int cellIndex = (int)((transactionPointer - (CELLS_OFFSET - SUPER_GROUPS_OFFSET)) >> 11);
+                includedCells.put(cellIndex >> 3, (byte)(includedCells.get(cellIndex >> 3) | (1 << (cellIndex & 7))));
+                transfer(transactionPointer, 1);
+
+                frontier.push(transaction.approvedTrunkTransactionPointer());
+                frontier.push(transaction.approvedBranchTransactionPointer());
+            }
+        }
+    }
+
+    private static void reconcileIncludedCells() { // "include" never debits, the transactions which have left the included subtangle after a reorganization of the tips are only found by a full traversal
+
+        final long[] cells = new long[(int)((transactionsNextPointer - (CELLS_OFFSET - SUPER_GROUPS_OFFSET)) >> 11 >> 6) + 1];
+        final TransactionView transaction = new TransactionView();
+        for (final long transactionPointer : Tangle.includedTransactions().pointers) {
+
+            final int cellIndex = (int)((transactionPointer - (CELLS_OFFSET - SUPER_GROUPS_OFFSET)) >> 11);
+            if (cellIndex >> 6 < cells.length && transaction.moveTo(transactionPointer).requestRating() == 0) {
+
+                cells[cellIndex >> 6] |= 1L << cellIndex;
+            }
+        }
+
+        for (int i = 0; i < cells.length; i++) {
 
-        long pointer = ((long)((hash[0] + 128) + ((hash[1] + 128) << 8))) << 11;
-        for (int depth = 2; depth < Transaction.HASH_SIZE; depth++) {
+            long changedCells = cells[i] ^ includedCells.getLong(i << 3);
+            if (changedCells != 0) {
+
+                includedCells.putLong(i << 3, cells[i]);
+                while (changedCells != 0) {
+
+                    final int bit = Long.numberOfTrailingZeros(changedCells);
+                    changedCells &= changedCells - 1;
+
+                    transfer((CELLS_OFFSET - SUPER_GROUPS_OFFSET) + ((((long)i << 6) + bit) << 11), (cells[i] & (1L << bit)) != 0 ? 1 : -1);
+                }
+            }
+        }
+    }
 
-            read(pointer);
+    private static void transfer(final long transactionPointer, final int sign) {
 
-            if (mainBuffer[Transaction.TYPE_OFFSET] == GROUP) {
+        final ByteBuffer chunk = transactionsChunks[(int)(transactionPointer >> 27)];
+        final int offset = (int)(transactionPointer & (CHUNK_SIZE - 1));
+        final long value = value(chunk, offset + Transaction.VALUE_OFFSET);
+        if (value != 0) {
 
-                if ((pointer = value(mainBuffer, (hash[depth] + 128) << 3)) == 0) {
+            final byte[] address = new byte[Hash.SIZE_IN_BYTES];
+            ((ByteBuffer)chunk.duplicate().position(offset + Transaction.ADDRESS_OFFSET)).get(address);
+            final long addressPointer = addressPointer(address);
+            if (addressPointer != 0) {
+
+                final ByteBuffer balancesChunk = balancesChunk(addressPointer >> 8);
+                final int balanceOffset = (int)((addressPointer >> 8) & (CHUNK_SIZE - 1));
+                setValue(balancesChunk, balanceOffset, value(balancesChunk, balanceOffset) + sign * value);
+            }
+        }
+    }
+
+    public static long balance(final byte[] address) { // Returns the sum of the values of the included transactions with this address, kept up to date by the Updater
+
+        final long addressPointer = addressPointer(address);
+
+        return addressPointer == 0 ? 0 : value(balancesChunk(addressPointer >> 8), (int)((addressPointer >> 8) & (CHUNK_SIZE - 1)));
+    }
+
+    private static ByteBuffer balancesChunk(final long balanceOffset) { // Balances take 1/256 of the size of the address cells, so "balances.iri" is mapped on demand
+
+        final int chunkIndex = (int)(balanceOffset >> 27);
+        synchronized (balancesChunks) { // Not on Storage.class, "shutDown" holds it while waiting for the Updater
+
+            if (balancesChunks[chunkIndex] == null) {
+
+                try {
+
+                    balancesChunks[chunkIndex] = balancesChannel.map(FileChannel.MapMode.READ_WRITE, ((long)chunkIndex) << 27, CHUNK_SIZE);
+
+                } catch (final IOException e) {
+
+                    throw new IllegalStateException(e);
+                }
+            }
+
+            return balancesChunks[chunkIndex];
+        }
+    }
+
+    private static void setHeight(final long pointer, final long height) { // Also finalizes the cell, under the write lock so that optimistic readers of the cell notice the change
+
+        final long stamp = lock.writeLock();
+        try {
+
+            setValue(transactionsChunks[(int)(pointer >> 27)], (int)(pointer & (CHUNK_SIZE - 1)) + Transaction.HEIGHT_OFFSET, height);
+
+            final int cellIndex = (int)((pointer - (CELLS_OFFSET - SUPER_GROUPS_OFFSET)) >> 11);
+            transactionsCellsStates.put(cellIndex >> 3, (byte)(transactionsCellsStates.get(cellIndex >> 3) | (1 << (cellIndex & 7))));
+
+        } finally {
+
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    private static long height(final long pointer) {
+
+        return pointer == 0 ? 0 : value(transactionsChunks[(int)(pointer >> 27)], (int)(pointer & (CHUNK_SIZE - 1)) + Transaction.HEIGHT_OFFSET);
+    }
+
+    private static void request(final byte[] hash) { // Keeps the requests up to date between two rebuildings
+
+        synchronized (scratchpad) {
+
+            if ((numberOfTransactionsToRequest + 1) * Transaction.HASH_SIZE <= SCRATCHPAD_SIZE) {
+
+                for (int i = 0; i < Transaction.HASH_SIZE; i++) {
+
+                    scratchpad.put(numberOfTransactionsToRequest * Transaction.HASH_SIZE + i, hash[i]);
+                }
+                numberOfTransactionsToRequest++;
+            }
+        }
+    }
+
+    public static long transactionPointer(final byte[] hash) { // Returns a negative value if the transaction hasn't been seen yet but was referenced
+
+        return readOptimistically(() -> pointer(hash, null, 2));
+    }
+
+    private static long pointer(final byte[] hash, final long[] groups, int depth) { // Doesn't modify the trie, but records the met group cells if "groups" is not null
+
+        long pointer = depth == 2 ? root(hash) : groups[depth];
+        for (; depth < Transaction.HASH_SIZE; depth++) {
+
+            final ByteBuffer chunk = transactionsChunks[(int)(pointer >> 27)];
+            final int offset = (int)(pointer & (CHUNK_SIZE - 1));
+
+            if (chunk.get(offset + Transaction.TYPE_OFFSET) == GROUP) {
+
+                if (groups != null) {
+
+                    groups[depth] = pointer;
+                }
+                if ((pointer = value(chunk, offset + ((hash[depth] + 128) << 3))) == 0) {
+
+                    if (groups != null) {
+
+                        groups[depth + 1] = 0;
+                    }
 
                     return 0;
                 }
 
             } else {
 
+                if (groups != null) {
+
+                    groups[depth] = 0;
+                }
                 for (; depth < Transaction.HASH_SIZE; depth++) {
 
-                    if (mainBuffer[Transaction.HASH_OFFSET + depth] != hash[depth]) {
+                    if (chunk.get(offset + Transaction.HASH_OFFSET + depth) != hash[depth]) {
 
                         return 0;
                     }
                 }
 
-                return value(mainBuffer, Transaction.REQUEST_RATING_OFFSET) == 0 ? pointer : -pointer;
+                return value(chunk, offset + Transaction.REQUEST_RATING_OFFSET) == 0 ? pointer : -pointer;
             }
         }
 
         throw new IllegalStateException("Corrupted storage");
     }
 
-    public static synchronized Transaction loadTransaction(final long pointer) {
+    private static long root(final byte[] hash) {
+
+        return ((long)((hash[0] + 128) + ((hash[1] + 128) << 8))) << 11;
+    }
+
+    private static int depth(final long[] groups, final int sharedPrefixLength) { // Returns the depth of the deepest recorded group cell which is still on the path
 
-        read(pointer);
+        int depth = 2;
+        while (depth < sharedPrefixLength && groups[depth + 1] != 0) {
 
-        return new Transaction();
+            depth++;
+        }
+
+        return depth;
+    }
+
+    public static long approveePointer(final byte[] hash) { // Unlike "transactionPointer" returns positive pointers of the transactions which have only been referenced too
+
+        return Math.abs(transactionPointer(hash));
     }
 
-    public static synchronized Transaction loadTransaction(final byte[] hash) {
+    public static List<Long> approveeTransactions(final long pointer) { // Returns the pointers of the transactions approving the one at "pointer", the latest ones first
+
+        final List<Long> approvers = new ArrayList<>();
+        if (pointer != 0) {
+
+            readOptimistically(() -> {
+
+                approvers.clear();
+
+                long blockPointer = value(transactionsChunks[(int)(pointer >> 27)], (int)(pointer & (CHUNK_SIZE - 1)) + Transaction.APPROVERS_POINTER_OFFSET), prevBlockPointer = Long.MAX_VALUE;
+                while (blockPointer != 0 && blockPointer < prevBlockPointer) { // Older blocks always lie before newer ones, so a torn read can't make it loop
+
+                    final ByteBuffer chunk = approversChunks[(int)(blockPointer >> 27)];
+                    final int offset = (int)(blockPointer & (CHUNK_SIZE - 1));
+                    for (int i = APPROVERS_BLOCK_SIZE - 2 * Long.BYTES; i >= 0; i -= Long.BYTES) {
+
+                        final long approverPointer = value(chunk, offset + i);
+                        if (approverPointer != 0) {
+
+                            approvers.add(approverPointer);
+                        }
+                    }
+
+                    prevBlockPointer = blockPointer;
+                    blockPointer = value(chunk, offset + APPROVERS_BLOCK_SIZE - Long.BYTES);
+                }
+
+                return approvers.size();
+            });
+        }
+
+        return approvers;
+    }
+
+    public static Transaction loadTransaction(final long pointer) {
+
+        final byte[] buffer = new byte[CELL_SIZE];
+        readOptimistically(() -> {
+
+            ((ByteBuffer)transactionsChunks[(int)(pointer >> 27)].duplicate().position((int)(pointer & (CHUNK_SIZE - 1)))).get(buffer);
+
+            return 0;
+        });
+
+        return new Transaction(buffer);
+    }
+
+    public static Transaction loadTransaction(final byte[] hash) {
 
         final long pointer = transactionPointer(hash);
 
@@ -478,40 +998,89 @@ class Storage {
     public static Hash transactionToRequest() {
 
         final byte[] hash = new byte[Transaction.HASH_SIZE];
-        ((ByteBuffer)scratchpad.position(ThreadLocalRandom.current().nextInt(numberOfTransactionsToRequest) * Transaction.HASH_SIZE)).get(hash);
+        final int offset = ThreadLocalRandom.current().nextInt(numberOfTransactionsToRequest) * Transaction.HASH_SIZE;
+        for (int i = 0; i < Transaction.HASH_SIZE; i++) {
+
+            hash[i] = scratchpad.get(offset + i);
+        }
 
         return new Hash(hash, 0, Transaction.HASH_SIZE);
     }
 
-    public static synchronized long addressPointer(final byte[] hash) {
+    public static long addressPointer(final byte[] hash) {
 
-        long pointer = ((long)((hash[0] + 128) + ((hash[1] + 128) << 8))) << 11;
-        for (int depth = 2; depth < Hash.SIZE_IN_BYTES; depth++) {
+        return readOptimistically(() -> {
 
-            ((ByteBuffer)addressesChunks[(int)(pointer >> 27)].position((int)(pointer & (CHUNK_SIZE - 1)))).get(mainBuffer);
+            long pointer = ((long)((hash[0] + 128) + ((hash[1] + 128) << 8))) << 11;
+            for (int depth = 2; depth < Hash.SIZE_IN_BYTES; depth++) {
 
-            if (mainBuffer[Transaction.TYPE_OFFSET] == GROUP) {
+                final ByteBuffer chunk = addressesChunks[(int)(pointer >> 27)];
+                final int offset = (int)(pointer & (CHUNK_SIZE - 1));
 
-                if ((pointer = value(mainBuffer, (hash[depth] + 128) << 3)) == 0) {
+                if (chunk.get(offset + Transaction.TYPE_OFFSET) == GROUP) {
 
-                    return 0;
-                }
+                    if ((pointer = value(chunk, offset + ((hash[depth] + 128) << 3))) == 0) {
 
-            } else {
+                        return 0;
+                    }
 
-                for (; depth < Hash.SIZE_IN_BYTES; depth++) {
+                } else {
 
-                    if (mainBuffer[Transaction.HASH_OFFSET + depth] != hash[depth]) {
+                    for (; depth < Hash.SIZE_IN_BYTES; depth++) {
 
-                        return 0;
+                        if (chunk.get(offset + Transaction.HASH_OFFSET + depth) != hash[depth]) {
+
+                            return 0;
+                        }
                     }
+
+                    return pointer;
                 }
+            }
+
+            throw new IllegalStateException("Corrupted storage");
+        });
+    }
+
+    private static long readOptimistically(final LongSupplier lookup) { // Lookups run without blocking each other and are retried under the shared lock only if a write has interfered
+
+        final long optimisticStamp = lock.tryOptimisticRead();
+        if (optimisticStamp != 0) {
 
-                return pointer;
+            try {
+
+                final long result = lookup.getAsLong();
+                if (lock.validate(optimisticStamp)) {
+
+                    return result;
+                }
+
+            } catch (final RuntimeException e) {
+
+                if (lock.validate(optimisticStamp)) {
+
+                    throw e;
+                }
             }
         }
 
-        throw new IllegalStateException("Corrupted storage");
+        final long stamp = lock.readLock();
+        try {
+
+            return lookup.getAsLong();
+
+        } finally {
+
+            lock.unlockRead(stamp);
+        }
+    }
+
+    private static Hash hash(final ByteBuffer chunk, final int offset, final int size) {
+
+        final byte[] bytes = new byte[size];
+        ((ByteBuffer)chunk.duplicate().position(offset)).get(bytes);
+
+        return new Hash(bytes, 0, size);
     }
 
     private static long value(final byte[] buffer, final int offset) {
@@ -519,6 +1088,19 @@ class Storage {
         return ((long)(buffer[offset] & 0xFF)) + (((long)(buffer[offset + 1] & 0xFF)) << 8) + (((long)(buffer[offset + 2] & 0xFF)) << 16) + (((long)(buffer[offset + 3] & 0xFF)) << 24) + (((long)(buffer[offset + 4] & 0xFF)) << 32) + (((long)(buffer[offset + 5] & 0xFF)) << 40) + (((long)(buffer[offset + 6] & 0xFF)) << 48) + (((long)(buffer[offset + 7] & 0xFF)) << 56);
     }
 
+    private static long value(final ByteBuffer buffer, final int offset) {
+
+        return ((long)(buffer.get(offset) & 0xFF)) + (((long)(buffer.get(offset + 1) & 0xFF)) << 8) + (((long)(buffer.get(offset + 2) & 0xFF)) << 16) + (((long)(buffer.get(offset + 3) & 0xFF)) << 24) + (((long)(buffer.get(offset + 4) & 0xFF)) << 32) + (((long)(buffer.get(offset + 5) & 0xFF)) << 40) + (((long)(buffer.get(offset + 6) & 0xFF)) << 48) + (((long)(buffer.get(offset + 7) & 0xFF)) << 56);
+    }
+
+    private static void setValue(final ByteBuffer buffer, final int offset, final long value) {
+
+        for (int i = 0; i < Long.BYTES; i++) {
+
+            buffer.put(offset + i, (byte)(value >> (i << 3)));
+        }
+    }
+
     private static void setValue(final byte[] buffer, final int offset, final long value) {
 
         buffer[offset] = (byte)value;
@@ -537,7 +1119,7 @@ class Storage {
 
         transactionsTipsFlags.put((int)(transactionsNextPointer >> 3), (byte)(transactionsTipsFlags.get((int)(transactionsNextPointer >> 3)) | (1 << (transactionsNextPointer & 7))));
 
-        if (((transactionsNextPointer += CELL_SIZE) & (CHUNK_SIZE - 1)) == 0) {
+        if (((transactionsNextPointer += CELL_SIZE) & (CHUNK_SIZE - 1)) == 0 && transactionsChunks[(int)(transactionsNextPointer >> 27)] == null) {
 
             try {
 
@@ -550,6 +1132,77 @@ class Storage {
         }
     }
 
+    private static void addApprover(final long approvedTrunkTransactionPointer, final long approvedBranchTransactionPointer, final long approverPointer) {
+
+        if (approvedTrunkTransactionPointer != 0) {
+
+            addApprover(approvedTrunkTransactionPointer, approverPointer);
+        }
+        if (approvedBranchTransactionPointer != 0 && approvedBranchTransactionPointer != approvedTrunkTransactionPointer) {
+
+            addApprover(approvedBranchTransactionPointer, approverPointer);
+        }
+    }
+
+    private static void addApprover(final long approveePointer, final long approverPointer) { // Fills the latest block of the list or prepends a new one, filled slots are never changed
+
+        final ByteBuffer approveeChunk = transactionsChunks[(int)(approveePointer >> 27)];
+        final int approveeOffset = (int)(approveePointer & (CHUNK_SIZE - 1));
+
+        final long blockPointer = value(approveeChunk, approveeOffset + Transaction.APPROVERS_POINTER_OFFSET);
+        if (blockPointer != 0) {
+
+            final ByteBuffer chunk = approversChunks[(int)(blockPointer >> 27)];
+            final int offset = (int)(blockPointer & (CHUNK_SIZE - 1));
+            for (int i = 0; i < APPROVERS_BLOCK_SIZE - Long.BYTES; i += Long.BYTES) {
+
+                if (value(chunk, offset + i) == 0) {
+
+                    setValue(chunk, offset + i, approverPointer);
+
+                    return;
+                }
+            }
+        }
+
+        final ByteBuffer chunk = approversChunks[(int)(approversNextPointer >> 27)];
+        final int offset = (int)(approversNextPointer & (CHUNK_SIZE - 1));
+        setValue(chunk, offset, approverPointer);
+        setValue(chunk, offset + APPROVERS_BLOCK_SIZE - Long.BYTES, blockPointer);
+        setValue(approveeChunk, approveeOffset + Transaction.APPROVERS_POINTER_OFFSET, approversNextPointer);
+
+        if (((approversNextPointer += APPROVERS_BLOCK_SIZE) & (CHUNK_SIZE - 1)) == 0) {
+
+            try {
+
+                approversChunks[(int)(approversNextPointer >> 27)] = approversChannel.map(FileChannel.MapMode.READ_WRITE, approversNextPointer, CHUNK_SIZE);
+
+            } catch (final IOException e) {
+
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private static void reserve(final long numberOfCells) { // Maps all the chunks the next "numberOfCells" appended cells would need at once
+
+        final int lastChunkIndex = (int)Math.min((transactionsNextPointer + numberOfCells * CELL_SIZE) >> 27, MAX_NUMBER_OF_CHUNKS - 1);
+        for (int i = (int)(transactionsNextPointer >> 27); i <= lastChunkIndex; i++) {
+
+            if (transactionsChunks[i] == null) {
+
+                try {
+
+                    transactionsChunks[i] = transactionsChannel.map(FileChannel.MapMode.READ_WRITE, SUPER_GROUPS_OFFSET + (((long)i) << 27), CHUNK_SIZE);
+
+                } catch (final IOException e) {
+
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
     private static void write(final long pointer) {
 
         ((ByteBuffer)transactionsChunks[(int)(pointer >> 27)].position((int)(pointer & (CHUNK_SIZE - 1)))).put(mainBuffer);
@@ -563,7 +1216,7 @@ class Storage {
     private static void updateAddressAndDigest(final iri.Transaction transaction, final long transactionPointer) {
 
         boolean nullAddress = true;
-        for (final byte value : transaction.address.bytes) {
+        for (final byte value : transaction.address().bytes) {
 
             if (value != 0) {
 
@@ -574,7 +1227,7 @@ class Storage {
         }
         if (!nullAddress) {
 
-            long pointer = ((long)((transaction.address.bytes[0] + 128) + ((transaction.address.bytes[1] + 128) << 8))) << 11, prevPointer = 0;
+            long pointer = ((long)((transaction.address().bytes[0] + 128) + ((transaction.address().bytes[1] + 128) << 8))) << 11, prevPointer = 0;
             for (int depth = 2; depth < Hash.SIZE_IN_BYTES; depth++) {
 
                 ((ByteBuffer)addressesChunks[(int)(pointer >> 27)].position((int)(pointer & (CHUNK_SIZE - 1)))).get(mainBuffer);
@@ -582,13 +1235,13 @@ class Storage {
                 if (mainBuffer[Transaction.TYPE_OFFSET] == GROUP) {
 
                     prevPointer = pointer;
-                    if ((pointer = value(mainBuffer, (transaction.address.bytes[depth] + 128) << 3)) == 0) {
+                    if ((pointer = value(mainBuffer, (transaction.address().bytes[depth] + 128) << 3)) == 0) {
 
-                        setValue(mainBuffer, (transaction.address.bytes[depth] + 128) << 3, pointer = addressesNextPointer);
+                        setValue(mainBuffer, (transaction.address().bytes[depth] + 128) << 3, pointer = addressesNextPointer);
 
                         System.arraycopy(ZEROED_BUFFER, 0, mainBufferCopy2, 0, CELL_SIZE);
                         mainBufferCopy2[Transaction.TYPE_OFFSET] = 1;
-                        System.arraycopy(transaction.address.bytes, 0, mainBufferCopy2, 8, Hash.SIZE_IN_BYTES);
+                        System.arraycopy(transaction.address().bytes, 0, mainBufferCopy2, 8, Hash.SIZE_IN_BYTES);
                         setValue(mainBufferCopy2, 64, transactionPointer);
 
                         ((ByteBuffer)addressesChunks[(int)(pointer >> 27)].position((int)(pointer & (CHUNK_SIZE - 1)))).put(mainBufferCopy2);
@@ -615,7 +1268,7 @@ class Storage {
 
                     for (int i = depth; i < Hash.SIZE_IN_BYTES; i++) {
 
-                        if (mainBuffer[Transaction.HASH_OFFSET + i] != transaction.address.bytes[i]) {
+                        if (mainBuffer[Transaction.HASH_OFFSET + i] != transaction.address().bytes[i]) {
 
                             final int differentHashByte = mainBuffer[Transaction.HASH_OFFSET + i];
 
@@ -624,7 +1277,7 @@ class Storage {
                             for (int j = depth; j < i; j++) {
 
                                 System.arraycopy(ZEROED_BUFFER, 0, mainBuffer, 0, CELL_SIZE);
-                                setValue(mainBuffer, (transaction.address.bytes[j] + 128) << 3, addressesNextPointer + CELL_SIZE);
+                                setValue(mainBuffer, (transaction.address().bytes[j] + 128) << 3, addressesNextPointer + CELL_SIZE);
 
                                 ((ByteBuffer)addressesChunks[(int)(addressesNextPointer >> 27)].position((int)(addressesNextPointer & (CHUNK_SIZE - 1)))).put(mainBuffer);
                                 if (((addressesNextPointer += CELL_SIZE) & (CHUNK_SIZE - 1)) == 0) {
@@ -642,7 +1295,7 @@ class Storage {
 
                             System.arraycopy(ZEROED_BUFFER, 0, mainBuffer, 0, CELL_SIZE);
                             setValue(mainBuffer, (differentHashByte + 128) << 3, pointer);
-                            setValue(mainBuffer, (transaction.address.bytes[i] + 128) << 3, addressesNextPointer + CELL_SIZE);
+                            setValue(mainBuffer, (transaction.address().bytes[i] + 128) << 3, addressesNextPointer + CELL_SIZE);
 
                             ((ByteBuffer)addressesChunks[(int)(addressesNextPointer >> 27)].position((int)(addressesNextPointer & (CHUNK_SIZE - 1)))).put(mainBuffer);
                             if (((addressesNextPointer += CELL_SIZE) & (CHUNK_SIZE - 1)) == 0) {
@@ -659,10 +1312,10 @@ class Storage {
 
                             System.arraycopy(ZEROED_BUFFER, 0, mainBufferCopy2, 0, CELL_SIZE);
                             mainBufferCopy2[Transaction.TYPE_OFFSET] = 1;
-                            System.arraycopy(transaction.address.bytes, 0, mainBufferCopy2, 8, Hash.SIZE_IN_BYTES);
+                            System.arraycopy(transaction.address().bytes, 0, mainBufferCopy2, 8, Hash.SIZE_IN_BYTES);
                             setValue(mainBufferCopy2, 64, transactionPointer);
 
-                            ((ByteBuffer)addressesChunks[(int)(pointer >> 27)].position((int)(pointer & (CHUNK_SIZE - 1)))).put(mainBufferCopy2);
+                            ((ByteBuffer)addressesChunks[(int)(addressesNextPointer >> 27)].position((int)(addressesNextPointer & (CHUNK_SIZE - 1)))).put(mainBufferCopy2);
                             if (((addressesNextPointer += CELL_SIZE) & (CHUNK_SIZE - 1)) == 0) {
 
                                 try {
@@ -676,7 +1329,7 @@ class Storage {
                             }
 
                             ((ByteBuffer)addressesChunks[(int)(prevPointer >> 27)].position((int)(prevPointer & (CHUNK_SIZE - 1)))).get(mainBuffer);
-                            setValue(mainBuffer, (transaction.address.bytes[depth - 1] + 128) << 3, detourPointer);
+                            setValue(mainBuffer, (transaction.address().bytes[depth - 1] + 128) << 3, detourPointer);
                             ((ByteBuffer)addressesChunks[(int)(prevPointer >> 27)].position((int)(prevPointer & (CHUNK_SIZE - 1)))).put(mainBuffer);
 
                             sameAddress = false;
@@ -687,6 +1340,7 @@ class Storage {
 
                     if (sameAddress) {
 
+                        long cellPointer = pointer; // The leaf or the continuation cell being filled
                         int offset = ZEROTH_POINTER_OFFSET;
                         while (true) {
 
@@ -700,7 +1354,7 @@ class Storage {
                                 if (nextCellPointer == 0) {
 
                                     setValue(mainBuffer, offset, addressesNextPointer);
-                                    ((ByteBuffer)addressesChunks[(int)(pointer >> 27)].position((int)(pointer & (CHUNK_SIZE - 1)))).put(mainBuffer);
+                                    ((ByteBuffer)addressesChunks[(int)(cellPointer >> 27)].position((int)(cellPointer & (CHUNK_SIZE - 1)))).put(mainBuffer);
 
                                     System.arraycopy(ZEROED_BUFFER, 0, mainBuffer, 0, CELL_SIZE);
                                     setValue(mainBuffer, 0, transactionPointer);
@@ -717,16 +1371,19 @@ class Storage {
                                         }
                                     }
 
+                                    break;
+
                                 } else {
 
                                     ((ByteBuffer)addressesChunks[(int)(nextCellPointer >> 27)].position((int)(nextCellPointer & (CHUNK_SIZE - 1)))).get(mainBuffer);
+                                    cellPointer = nextCellPointer;
                                     offset = -Long.BYTES;
                                 }
 
                             } else {
 
                                 setValue(mainBuffer, offset, transactionPointer);
-                                ((ByteBuffer)addressesChunks[(int)(pointer >> 27)].position((int)(pointer & (CHUNK_SIZE - 1)))).put(mainBuffer);
+                                ((ByteBuffer)addressesChunks[(int)(cellPointer >> 27)].position((int)(cellPointer & (CHUNK_SIZE - 1)))).put(mainBuffer);
 
                                 break;
                             }
@@ -739,7 +1396,7 @@ class Storage {
         }
 
         boolean nullDigest = true;
-        for (final byte value : transaction.digest.bytes) {
+        for (final byte value : transaction.digest().bytes) {
 
             if (value != 0) {
 
@@ -750,7 +1407,7 @@ class Storage {
         }
         if (!nullDigest) {
 
-            long pointer = ((long)((transaction.digest.bytes[0] + 128) + ((transaction.digest.bytes[1] + 128) << 8))) << 11, prevPointer = 0;
+            long pointer = ((long)((transaction.digest().bytes[0] + 128) + ((transaction.digest().bytes[1] + 128) << 8))) << 11, prevPointer = 0;
             for (int depth = 2; depth < Hash.SIZE_IN_BYTES; depth++) {
 
                 ((ByteBuffer)digestsChunks[(int)(pointer >> 27)].position((int)(pointer & (CHUNK_SIZE - 1)))).get(mainBuffer);
@@ -758,13 +1415,13 @@ class Storage {
                 if (mainBuffer[Transaction.TYPE_OFFSET] == GROUP) {
 
                     prevPointer = pointer;
-                    if ((pointer = value(mainBuffer, (transaction.digest.bytes[depth] + 128) << 3)) == 0) {
+                    if ((pointer = value(mainBuffer, (transaction.digest().bytes[depth] + 128) << 3)) == 0) {
 
-                        setValue(mainBuffer, (transaction.digest.bytes[depth] + 128) << 3, pointer = digestsNextPointer);
+                        setValue(mainBuffer, (transaction.digest().bytes[depth] + 128) << 3, pointer = digestsNextPointer);
 
                         System.arraycopy(ZEROED_BUFFER, 0, mainBufferCopy2, 0, CELL_SIZE);
                         mainBufferCopy2[Transaction.TYPE_OFFSET] = 1;
-                        System.arraycopy(transaction.digest.bytes, 0, mainBufferCopy2, 8, Hash.SIZE_IN_BYTES);
+                        System.arraycopy(transaction.digest().bytes, 0, mainBufferCopy2, 8, Hash.SIZE_IN_BYTES);
                         setValue(mainBufferCopy2, 64, transactionPointer);
 
                         ((ByteBuffer)digestsChunks[(int)(pointer >> 27)].position((int)(pointer & (CHUNK_SIZE - 1)))).put(mainBufferCopy2);
@@ -789,7 +1446,7 @@ class Storage {
 
                     for (int i = depth; i < Hash.SIZE_IN_BYTES; i++) {
 
-                        if (mainBuffer[Transaction.HASH_OFFSET + i] != transaction.digest.bytes[i]) {
+                        if (mainBuffer[Transaction.HASH_OFFSET + i] != transaction.digest().bytes[i]) {
 
                             final int differentHashByte = mainBuffer[Transaction.HASH_OFFSET + i];
 
@@ -798,7 +1455,7 @@ class Storage {
                             for (int j = depth; j < i; j++) {
 
                                 System.arraycopy(ZEROED_BUFFER, 0, mainBuffer, 0, CELL_SIZE);
-                                setValue(mainBuffer, (transaction.digest.bytes[j] + 128) << 3, digestsNextPointer + CELL_SIZE);
+                                setValue(mainBuffer, (transaction.digest().bytes[j] + 128) << 3, digestsNextPointer + CELL_SIZE);
 
                                 ((ByteBuffer)digestsChunks[(int)(digestsNextPointer >> 27)].position((int)(digestsNextPointer & (CHUNK_SIZE - 1)))).put(mainBuffer);
                                 if (((digestsNextPointer += CELL_SIZE) & (CHUNK_SIZE - 1)) == 0) {
@@ -816,7 +1473,7 @@ class Storage {
 
                             System.arraycopy(ZEROED_BUFFER, 0, mainBuffer, 0, CELL_SIZE);
                             setValue(mainBuffer, (differentHashByte + 128) << 3, pointer);
-                            setValue(mainBuffer, (transaction.digest.bytes[i] + 128) << 3, digestsNextPointer + CELL_SIZE);
+                            setValue(mainBuffer, (transaction.digest().bytes[i] + 128) << 3, digestsNextPointer + CELL_SIZE);
 
                             ((ByteBuffer)digestsChunks[(int)(digestsNextPointer >> 27)].position((int)(digestsNextPointer & (CHUNK_SIZE - 1)))).put(mainBuffer);
                             if (((digestsNextPointer += CELL_SIZE) & (CHUNK_SIZE - 1)) == 0) {
@@ -833,10 +1490,10 @@ class Storage {
 
                             System.arraycopy(ZEROED_BUFFER, 0, mainBufferCopy2, 0, CELL_SIZE);
                             mainBufferCopy2[Transaction.TYPE_OFFSET] = 1;
-                            System.arraycopy(transaction.digest.bytes, 0, mainBufferCopy2, 8, Hash.SIZE_IN_BYTES);
+                            System.arraycopy(transaction.digest().bytes, 0, mainBufferCopy2, 8, Hash.SIZE_IN_BYTES);
                             setValue(mainBufferCopy2, 64, transactionPointer);
 
-                            ((ByteBuffer)digestsChunks[(int)(pointer >> 27)].position((int)(pointer & (CHUNK_SIZE - 1)))).put(mainBufferCopy2);
+                            ((ByteBuffer)digestsChunks[(int)(digestsNextPointer >> 27)].position((int)(digestsNextPointer & (CHUNK_SIZE - 1)))).put(mainBufferCopy2);
                             if (((digestsNextPointer += CELL_SIZE) & (CHUNK_SIZE - 1)) == 0) {
 
                                 try {
@@ -850,13 +1507,14 @@ class Storage {
                             }
 
                             ((ByteBuffer)digestsChunks[(int)(prevPointer >> 27)].position((int)(prevPointer & (CHUNK_SIZE - 1)))).get(mainBuffer);
-                            setValue(mainBuffer, (transaction.digest.bytes[depth - 1] + 128) << 3, detourPointer);
+                            setValue(mainBuffer, (transaction.digest().bytes[depth - 1] + 128) << 3, detourPointer);
                             ((ByteBuffer)digestsChunks[(int)(prevPointer >> 27)].position((int)(prevPointer & (CHUNK_SIZE - 1)))).put(mainBuffer);
 
                             return;
                         }
                     }
 
+                    long cellPointer = pointer; // The leaf or the continuation cell being filled
                     int offset = ZEROTH_POINTER_OFFSET;
                     while (true) {
 
@@ -870,7 +1528,7 @@ class Storage {
                             if (nextCellPointer == 0) {
 
                                 setValue(mainBuffer, offset, digestsNextPointer);
-                                ((ByteBuffer)digestsChunks[(int)(pointer >> 27)].position((int)(pointer & (CHUNK_SIZE - 1)))).put(mainBuffer);
+                                ((ByteBuffer)digestsChunks[(int)(cellPointer >> 27)].position((int)(cellPointer & (CHUNK_SIZE - 1)))).put(mainBuffer);
 
                                 System.arraycopy(ZEROED_BUFFER, 0, mainBuffer, 0, CELL_SIZE);
                                 setValue(mainBuffer, 0, transactionPointer);
@@ -887,16 +1545,19 @@ class Storage {
                                     }
                                 }
 
+                                return;
+
                             } else {
 
                                 ((ByteBuffer)digestsChunks[(int)(nextCellPointer >> 27)].position((int)(nextCellPointer & (CHUNK_SIZE - 1)))).get(mainBuffer);
+                                cellPointer = nextCellPointer;
                                 offset = -Long.BYTES;
                             }
 
                         } else {
 
                             setValue(mainBuffer, offset, transactionPointer);
-                            ((ByteBuffer)digestsChunks[(int)(pointer >> 27)].position((int)(pointer & (CHUNK_SIZE - 1)))).put(mainBuffer);
+                            ((ByteBuffer)digestsChunks[(int)(cellPointer >> 27)].position((int)(cellPointer & (CHUNK_SIZE - 1)))).put(mainBuffer);
 
                             return;
                         }
@@ -928,6 +1589,7 @@ class Storage {
         public static final int APPROVED_BRANCH_TRANSACTION_POINTER_OFFSET = APPROVED_TRUNK_TRANSACTION_POINTER_OFFSET + APPROVED_TRUNK_TRANSACTION_POINTER_SIZE + ((Long.BYTES - (APPROVED_TRUNK_TRANSACTION_POINTER_SIZE & (Long.BYTES - 1))) & (Long.BYTES - 1)), APPROVED_BRANCH_TRANSACTION_POINTER_SIZE = Long.BYTES;
         public static final int HEIGHT_OFFSET = APPROVED_BRANCH_TRANSACTION_POINTER_OFFSET + APPROVED_BRANCH_TRANSACTION_POINTER_SIZE + ((Long.BYTES - (APPROVED_BRANCH_TRANSACTION_POINTER_SIZE & (Long.BYTES - 1))) & (Long.BYTES - 1)), HEIGHT_SIZE = Long.BYTES;
         public static final int VALID_SUBTANGLE_OFFSET = HEIGHT_OFFSET + HEIGHT_SIZE + ((Long.BYTES - (HEIGHT_SIZE & (Long.BYTES - 1))) & (Long.BYTES - 1)), VALID_SUBTANGLE_SIZE = Long.BYTES;
+        public static final int APPROVERS_POINTER_OFFSET = VALID_SUBTANGLE_OFFSET + VALID_SUBTANGLE_SIZE + ((Long.BYTES - (VALID_SUBTANGLE_SIZE & (Long.BYTES - 1))) & (Long.BYTES - 1)), APPROVERS_POINTER_SIZE = Long.BYTES; // Points to the latest block of the approvers list in "approvers.iri"
 
         final int type;
         final byte[] hash;
@@ -949,37 +1611,39 @@ class Storage {
         final long approvedBranchTransactionPointer;
         final long height;
         final int validSubtangle;
-
-        Transaction() {
-
-            type = mainBuffer[TYPE_OFFSET];
-            System.arraycopy(mainBuffer, HASH_OFFSET, hash = new byte[HASH_SIZE], 0, HASH_SIZE);
-            requestRating = value(mainBuffer, REQUEST_RATING_OFFSET);
-
-            System.arraycopy(mainBuffer, BYTES_OFFSET, bytes = new byte[BYTES_SIZE], 0, BYTES_SIZE);
-
-            System.arraycopy(mainBuffer, DIGEST_OFFSET, digest = new byte[DIGEST_SIZE], 0, DIGEST_SIZE);
-            System.arraycopy(mainBuffer, ADDRESS_OFFSET, address = new byte[ADDRESS_SIZE], 0, ADDRESS_SIZE);
-            value = value(mainBuffer, VALUE_OFFSET);
-            timestamp = value(mainBuffer, TIMESTAMP_OFFSET);
-            index = value(mainBuffer, INDEX_OFFSET);
-            System.arraycopy(mainBuffer, SIGNATURE_NONCE_OFFSET, signatureNonce = new byte[SIGNATURE_NONCE_SIZE], 0, SIGNATURE_NONCE_SIZE);
-            System.arraycopy(mainBuffer, APPROVAL_NONCE_OFFSET, approvalNonce = new byte[APPROVAL_NONCE_SIZE], 0, APPROVAL_NONCE_SIZE);
-            System.arraycopy(mainBuffer, APPROVED_TRUNK_TRANSACTION_OFFSET, approvedTrunkTransaction = new byte[APPROVED_TRUNK_TRANSACTION_SIZE], 0, APPROVED_TRUNK_TRANSACTION_SIZE);
-            System.arraycopy(mainBuffer, APPROVED_BRANCH_TRANSACTION_OFFSET, approvedBranchTransaction = new byte[APPROVED_BRANCH_TRANSACTION_SIZE], 0, APPROVED_BRANCH_TRANSACTION_SIZE);
-
-            approvedTrunkTransactionPointer = value(mainBuffer, APPROVED_TRUNK_TRANSACTION_POINTER_OFFSET);
-            approvedBranchTransactionPointer = value(mainBuffer, APPROVED_BRANCH_TRANSACTION_POINTER_OFFSET);
-            height = value(mainBuffer, HEIGHT_OFFSET);
-            validSubtangle = mainBuffer[VALID_SUBTANGLE_OFFSET];
+        final long approversPointer;
+
+        Transaction(final byte[] buffer) {
+
+            type = buffer[TYPE_OFFSET];
+            System.arraycopy(buffer, HASH_OFFSET, hash = new byte[HASH_SIZE], 0, HASH_SIZE);
+            requestRating = value(buffer, REQUEST_RATING_OFFSET);
+
+            System.arraycopy(buffer, BYTES_OFFSET, bytes = new byte[BYTES_SIZE], 0, BYTES_SIZE);
+
+            System.arraycopy(buffer, DIGEST_OFFSET, digest = new byte[DIGEST_SIZE], 0, DIGEST_SIZE);
+            System.arraycopy(buffer, ADDRESS_OFFSET, address = new byte[ADDRESS_SIZE], 0, ADDRESS_SIZE);
+            value = value(buffer, VALUE_OFFSET);
+            timestamp = value(buffer, TIMESTAMP_OFFSET);
+            index = value(buffer, INDEX_OFFSET);
+            System.arraycopy(buffer, SIGNATURE_NONCE_OFFSET, signatureNonce = new byte[SIGNATURE_NONCE_SIZE], 0, SIGNATURE_NONCE_SIZE);
+            System.arraycopy(buffer, APPROVAL_NONCE_OFFSET, approvalNonce = new byte[APPROVAL_NONCE_SIZE], 0, APPROVAL_NONCE_SIZE);
+            System.arraycopy(buffer, APPROVED_TRUNK_TRANSACTION_OFFSET, approvedTrunkTransaction = new byte[APPROVED_TRUNK_TRANSACTION_SIZE], 0, APPROVED_TRUNK_TRANSACTION_SIZE);
+            System.arraycopy(buffer, APPROVED_BRANCH_TRANSACTION_OFFSET, approvedBranchTransaction = new byte[APPROVED_BRANCH_TRANSACTION_SIZE], 0, APPROVED_BRANCH_TRANSACTION_SIZE);
+
+            approvedTrunkTransactionPointer = value(buffer, APPROVED_TRUNK_TRANSACTION_POINTER_OFFSET);
+            approvedBranchTransactionPointer = value(buffer, APPROVED_BRANCH_TRANSACTION_POINTER_OFFSET);
+            height = value(buffer, HEIGHT_OFFSET);
+            validSubtangle = buffer[VALID_SUBTANGLE_OFFSET];
+            approversPointer = value(buffer, APPROVERS_POINTER_OFFSET);
         }
 
         public iri.Transaction transaction() {
 
-            return new iri.Transaction(bytes);
+            return new iri.Transaction(bytes, new Hash(hash, 0, HASH_SIZE)); // The trailing bytes of a valid hash are zeros, so the stored prefix is the whole hash
         }
 
-        public static void dump(final byte[] hash, final iri.Transaction transaction) {
+        public static void dump(final byte[] hash, final iri.Transaction transaction, final long approvedTrunkTransactionPointer, final long approvedBranchTransactionPointer) {
 
             if (transaction == null) {
 
@@ -991,18 +1655,6 @@ class Storage {
 
             } else {
 
-                final long approvedTrunkTransactionPointer = storeTransaction(transaction.approvedTrunkTransaction.bytes, null, false);
-                if (approvedTrunkTransactionPointer > 0) {
-
-                    transactionsTipsFlags.put((int)(approvedTrunkTransactionPointer >> 3), (byte) (transactionsTipsFlags.get((int)(approvedTrunkTransactionPointer >> 3)) & (0xFF ^ (1 << (approvedTrunkTransactionPointer & 7)))));
-                }
-
-                final long approvedBranchTransactionPointer = storeTransaction(transaction.approvedBranchTransaction.bytes, null, false);
-                if (approvedBranchTransactionPointer > 0) {
-
-                    transactionsTipsFlags.put((int)(approvedBranchTransactionPointer >> 3), (byte) (transactionsTipsFlags.get((int)(approvedBranchTransactionPointer >> 3)) & (0xFF ^ (1 << (approvedBranchTransactionPointer & 7)))));
-                }
-
                 System.arraycopy(ZEROED_BUFFER, 0, mainBuffer, 0, CELL_SIZE);
 
                 setValue(mainBuffer, APPROVED_TRUNK_TRANSACTION_POINTER_OFFSET, approvedTrunkTransactionPointer);
@@ -1011,18 +1663,130 @@ class Storage {
                 mainBuffer[TYPE_OFFSET] = (byte)transaction.type();
                 System.arraycopy(hash, 0, mainBuffer, HASH_OFFSET, HASH_SIZE);
 
-                System.arraycopy(Converter.bytes(transaction.trits), 0, mainBuffer, BYTES_OFFSET, BYTES_SIZE);
+                System.arraycopy(transaction.bytes, 0, mainBuffer, BYTES_OFFSET, BYTES_SIZE);
 
-                System.arraycopy(transaction.digest.bytes, 0, mainBuffer, DIGEST_OFFSET, DIGEST_SIZE);
-                System.arraycopy(transaction.address.bytes, 0, mainBuffer, ADDRESS_OFFSET, ADDRESS_SIZE);
+                System.arraycopy(transaction.digest().bytes, 0, mainBuffer, DIGEST_OFFSET, DIGEST_SIZE);
+                System.arraycopy(transaction.address().bytes, 0, mainBuffer, ADDRESS_OFFSET, ADDRESS_SIZE);
                 setValue(mainBuffer, VALUE_OFFSET, transaction.value);
                 setValue(mainBuffer, TIMESTAMP_OFFSET, transaction.timestamp);
                 setValue(mainBuffer, INDEX_OFFSET, transaction.index);
-                System.arraycopy(Converter.bytes(transaction.trits, iri.Transaction.SIGNATURE_NONCE_OFFSET, iri.Transaction.SIGNATURE_NONCE_SIZE), 0, mainBuffer, SIGNATURE_NONCE_OFFSET, SIGNATURE_NONCE_SIZE);
-                System.arraycopy(Converter.bytes(transaction.trits, iri.Transaction.APPROVAL_NONCE_OFFSET, iri.Transaction.APPROVAL_NONCE_SIZE), 0, mainBuffer, APPROVAL_NONCE_OFFSET, APPROVAL_NONCE_SIZE);
-                System.arraycopy(transaction.approvedTrunkTransaction.bytes, 0, mainBuffer, APPROVED_TRUNK_TRANSACTION_OFFSET, APPROVED_TRUNK_TRANSACTION_SIZE);
-                System.arraycopy(transaction.approvedBranchTransaction.bytes, 0, mainBuffer, APPROVED_BRANCH_TRANSACTION_OFFSET, APPROVED_BRANCH_TRANSACTION_SIZE);
+                transaction.trits(iri.Transaction.SIGNATURE_NONCE_OFFSET, iri.Transaction.SIGNATURE_NONCE_SIZE, nonceTrits, 0);
+                Converter.bytes(nonceTrits, 0, iri.Transaction.SIGNATURE_NONCE_SIZE, mainBuffer, SIGNATURE_NONCE_OFFSET);
+                transaction.trits(iri.Transaction.APPROVAL_NONCE_OFFSET, iri.Transaction.APPROVAL_NONCE_SIZE, nonceTrits, 0);
+                Converter.bytes(nonceTrits, 0, iri.Transaction.APPROVAL_NONCE_SIZE, mainBuffer, APPROVAL_NONCE_OFFSET);
+                System.arraycopy(transaction.approvedTrunkTransaction().bytes, 0, mainBuffer, APPROVED_TRUNK_TRANSACTION_OFFSET, APPROVED_TRUNK_TRANSACTION_SIZE);
+                System.arraycopy(transaction.approvedBranchTransaction().bytes, 0, mainBuffer, APPROVED_BRANCH_TRANSACTION_OFFSET, APPROVED_BRANCH_TRANSACTION_SIZE);
             }
         }
     }
+
+    public static final class TransactionView { // Reads the fields of a stored transaction in place, a single instance can be moved over any number of cells
+
+        long pointer;
+
+        private ByteBuffer chunk;
+        private int offset;
+
+        public TransactionView moveTo(final long pointer) {
+
+            this.pointer = pointer;
+            chunk = transactionsChunks[(int)(pointer >> 27)];
+            offset = (int)(pointer & (CHUNK_SIZE - 1));
+
+            return this;
+        }
+
+        public int type() {
+
+            return (int)readOptimistically(() -> chunk.get(offset + Transaction.TYPE_OFFSET));
+        }
+
+        public void hash(final byte[] destination) {
+
+            copy(Transaction.HASH_OFFSET, destination, 0, Transaction.HASH_SIZE);
+        }
+
+        public long requestRating() {
+
+            return field(Transaction.REQUEST_RATING_OFFSET);
+        }
+
+        public void bytes(final byte[] destination, final int destinationOffset) {
+
+            copy(Transaction.BYTES_OFFSET, destination, destinationOffset, Transaction.BYTES_SIZE);
+        }
+
+        public void digest(final byte[] destination) {
+
+            copy(Transaction.DIGEST_OFFSET, destination, 0, Transaction.DIGEST_SIZE);
+        }
+
+        public void address(final byte[] destination) {
+
+            copy(Transaction.ADDRESS_OFFSET, destination, 0, Transaction.ADDRESS_SIZE);
+        }
+
+        public long value() {
+
+            return field(Transaction.VALUE_OFFSET);
+        }
+
+        public long timestamp() {
+
+            return field(Transaction.TIMESTAMP_OFFSET);
+        }
+
+        public long index() {
+
+            return field(Transaction.INDEX_OFFSET);
+        }
+
+        public void approvedTrunkTransaction(final byte[] destination) {
+
+            copy(Transaction.APPROVED_TRUNK_TRANSACTION_OFFSET, destination, 0, Transaction.APPROVED_TRUNK_TRANSACTION_SIZE);
+        }
+
+        public void approvedBranchTransaction(final byte[] destination) {
+
+            copy(Transaction.APPROVED_BRANCH_TRANSACTION_OFFSET, destination, 0, Transaction.APPROVED_BRANCH_TRANSACTION_SIZE);
+        }
+
+        public long approvedTrunkTransactionPointer() {
+
+            return field(Transaction.APPROVED_TRUNK_TRANSACTION_POINTER_OFFSET);
+        }
+
+        public long approvedBranchTransactionPointer() {
+
+            return field(Transaction.APPROVED_BRANCH_TRANSACTION_POINTER_OFFSET);
+        }
+
+        public long height() {
+
+            return field(Transaction.HEIGHT_OFFSET);
+        }
+
+        public long approversPointer() {
+
+            return field(Transaction.APPROVERS_POINTER_OFFSET);
+        }
+
+        private long field(final int fieldOffset) { // Every field is read on its own and validated against the stamp, "write" can't tear it
+
+            return readOptimistically(() -> Storage.value(chunk, offset + fieldOffset));
+        }
+
+        private void copy(final int fieldOffset, final byte[] destination, final int destinationOffset, final int size) {
+
+            readOptimistically(() -> {
+
+                for (int i = 0; i < size; i++) {
+
+                    destination[destinationOffset + i] = chunk.get(offset + fieldOffset + i);
+                }
+
+                return 0;
+            });
+        }
+    }
 }
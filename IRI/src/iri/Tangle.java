@@ -1,19 +1,27 @@
 package iri;
 
 import java.util.*;
+import java.util.concurrent.*;
 
 public class Tangle {
 
+    private static final long FIRST_CELL_POINTER = Storage.CELLS_OFFSET - Storage.SUPER_GROUPS_OFFSET;
+
+    private static final Object traversalLock = new Object();
+    private static volatile IncludedTransactions includedTransactions;
+
     static synchronized boolean add(final Transaction transaction) {
 
         final long pointer = Storage.storeTransaction(transaction.hash().bytes, transaction, false);
         if (pointer != 0) {
 
-            TipsSelector.trigger();
-            if (Storage.transactionPointer(transaction.approvedTrunkTransaction.bytes) != 0
-                    && Storage.transactionPointer(transaction.approvedBranchTransaction.bytes) != 0) { // TODO: Relax the requirements for rebroadcasting
+            Storage.solidify(pointer);
+            TipsSelector.trigger(pointer);
+            EventStream.transactionAdded(transaction);
+            if (Storage.transactionPointer(transaction.approvedTrunkTransaction().bytes) != 0
+                    && Storage.transactionPointer(transaction.approvedBranchTransaction().bytes) != 0) { // TODO: Relax the requirements for rebroadcasting
 
-                Rebroadcaster.push(Converter.bytes(transaction.trits));
+                Rebroadcaster.push(transaction.bytes);
             }
 
             return true;
@@ -24,38 +32,188 @@ public class Tangle {
         }
     }
 
-    static synchronized boolean getIncludedTransactions(final Set<Hash> includedTransactions) {
+    static IncludedTransactions includedTransactions() { // Reuses the previous traversal while the tips stay the same and it either was solid or nothing has been stored since
+
+        final long tipsVersion = TipsSelector.tipsVersion;
+        IncludedTransactions cachedIncludedTransactions = includedTransactions;
+        if (cachedIncludedTransactions == null || !cachedIncludedTransactions.validFor(tipsVersion)) {
+
+            synchronized (traversalLock) {
+
+                cachedIncludedTransactions = includedTransactions;
+                if (cachedIncludedTransactions == null || !cachedIncludedTransactions.validFor(tipsVersion)) {
+
+                    includedTransactions = cachedIncludedTransactions = traverse(tipsVersion);
+                }
+            }
+        }
+
+        return cachedIncludedTransactions;
+    }
+
+    private static IncludedTransactions traverse(final long tipsVersion) {
 
+        final long transactionsNextPointer = Storage.transactionsNextPointer;
+        final List<Hash> unknownTips = new ArrayList<>();
         boolean solidSubtangle = true;
 
-        final Queue<Hash> nonAnalyzedTransactions = new LinkedList<>(TipsSelector.tips());
-        Hash hash;
-        while ((hash = nonAnalyzedTransactions.poll()) != null) {
+        long[] visitedCells = new long[(int)((transactionsNextPointer - FIRST_CELL_POINTER) / Storage.CELL_SIZE / Long.SIZE) + 1];
+        long[] pointers = new long[1024];
+        int numberOfPointers = 0;
 
-            if (includedTransactions.add(hash)) {
+        final Set<Hash> tips = TipsSelector.tips();
+        long[] frontier = new long[tips.size()];
+        int frontierSize = 0;
+        for (final Hash tip : tips) {
 
-                final Storage.Transaction transaction = Storage.loadTransaction(hash.bytes);
-                if (transaction == null) {
+            final long pointer = Storage.approveePointer(tip.bytes);
+            if (pointer == 0) {
 
-                    solidSubtangle = false;
+                unknownTips.add(tip);
+                solidSubtangle = false;
 
-                } else {
+            } else {
+
+                frontier[frontierSize++] = pointer;
+            }
+        }
+
+        while (frontierSize > 0) {
+
+            int nextFrontierSize = 0;
+            for (int i = 0; i < frontierSize; i++) { // Drops the cells visited on earlier levels or already seen on this one
 
-                    final Hash approvedTrunkTransaction = new Hash(transaction.approvedTrunkTransaction, 0, Storage.Transaction.HASH_SIZE);
-                    if (!includedTransactions.contains(approvedTrunkTransaction)) {
+                final long pointer = frontier[i];
+                final int cellIndex = (int)((pointer - FIRST_CELL_POINTER) / Storage.CELL_SIZE);
+                if (cellIndex >> 6 >= visitedCells.length) { // Only cells stored during the traversal can be out of range
 
-                        nonAnalyzedTransactions.offer(approvedTrunkTransaction);
-                    }
+                    visitedCells = Arrays.copyOf(visitedCells, Math.max(visitedCells.length * 2, (cellIndex >> 6) + 1));
+                }
+                if ((visitedCells[cellIndex >> 6] & (1L << cellIndex)) == 0) {
+
+                    visitedCells[cellIndex >> 6] |= 1L << cellIndex;
+                    frontier[nextFrontierSize++] = pointer;
+                }
+            }
+            frontierSize = nextFrontierSize;
+
+            if (numberOfPointers + frontierSize > pointers.length) {
+
+                pointers = Arrays.copyOf(pointers, Math.max(pointers.length * 2, numberOfPointers + frontierSize));
+            }
+            System.arraycopy(frontier, 0, pointers, numberOfPointers, frontierSize);
+            numberOfPointers += frontierSize;
+
+            final long[] approvees = new long[frontierSize * 2];
+            if (!ForkJoinPool.commonPool().invoke(new Expansion(frontier, 0, frontierSize, approvees))) {
+
+                solidSubtangle = false;
+            }
+
+            frontierSize = 0;
+            for (final long approveePointer : approvees) {
 
-                    final Hash approvedBranchTransaction = new Hash(transaction.approvedBranchTransaction, 0, Storage.Transaction.HASH_SIZE);
-                    if (!includedTransactions.contains(approvedBranchTransaction)) {
+                if (approveePointer != 0) {
 
-                        nonAnalyzedTransactions.offer(approvedBranchTransaction);
-                    }
+                    approvees[frontierSize++] = approveePointer;
                 }
             }
+            frontier = approvees;
         }
 
-        return solidSubtangle;
+        return new IncludedTransactions(tipsVersion, transactionsNextPointer, Arrays.copyOf(pointers, numberOfPointers), unknownTips, solidSubtangle);
+    }
+
+    static final class IncludedTransactions {
+
+        final long tipsVersion;
+        final long transactionsNextPointer;
+
+        final long[] pointers; // Cells reachable from the tips, including the ones still being requested
+        final List<Hash> unknownTips;
+        final boolean solid;
+
+        IncludedTransactions(final long tipsVersion, final long transactionsNextPointer, final long[] pointers, final List<Hash> unknownTips, final boolean solid) {
+
+            this.tipsVersion = tipsVersion;
+            this.transactionsNextPointer = transactionsNextPointer;
+            this.pointers = pointers;
+            this.unknownTips = unknownTips;
+            this.solid = solid;
+        }
+
+        boolean validFor(final long tipsVersion) {
+
+            return this.tipsVersion == tipsVersion && (solid || transactionsNextPointer == Storage.transactionsNextPointer);
+        }
+
+        Set<Hash> hashes() {
+
+            final Set<Hash> hashes = new HashSet<>(unknownTips);
+            final Storage.TransactionView transaction = new Storage.TransactionView();
+            final byte[] hashBuffer = new byte[Storage.Transaction.HASH_SIZE];
+            for (final long pointer : pointers) {
+
+                transaction.moveTo(pointer).hash(hashBuffer);
+                hashes.add(new Hash(hashBuffer, 0, Storage.Transaction.HASH_SIZE));
+            }
+
+            return hashes;
+        }
+    }
+
+    private static final class Expansion extends RecursiveTask<Boolean> { // Reads the approvees of a frontier slice, returns false if any cell is still being requested
+
+        private static final long serialVersionUID = 1L; // Never serialized, ForkJoinTask is just Serializable
+
+        private static final int THRESHOLD = 256;
+
+        private final long[] frontier;
+        private final int from, to;
+        private final long[] approvees;
+
+        Expansion(final long[] frontier, final int from, final int to, final long[] approvees) {
+
+            this.frontier = frontier;
+            this.from = from;
+            this.to = to;
+            this.approvees = approvees;
+        }
+
+        @Override
+        protected Boolean compute() {
+
+            if (to - from > THRESHOLD) {
+
+                final Expansion left = new Expansion(frontier, from, (from + to) >>> 1, approvees);
+                final Expansion right = new Expansion(frontier, (from + to) >>> 1, to, approvees);
+                left.fork();
+
+                return right.compute() & left.join();
+            }
+
+            boolean solid = true;
+            final Storage.TransactionView transaction = new Storage.TransactionView();
+            for (int i = from; i < to; i++) {
+
+                if (frontier[i] == FIRST_CELL_POINTER) { // The genesis cell is the root, it approves nothing
+
+                    continue;
+                }
+
+                transaction.moveTo(frontier[i]);
+                if (transaction.requestRating() != 0) {
+
+                    solid = false;
+
+                } else {
+
+                    approvees[i * 2] = transaction.approvedTrunkTransactionPointer();
+                    approvees[i * 2 + 1] = transaction.approvedBranchTransactionPointer();
+                }
+            }
+
+            return solid;
+        }
     }
 }
@@ -13,18 +13,50 @@ class TipsSelector {
     public static final int TIP_SIZE_IN_BYTES = Converter.sizeInBytes(TIP_SIZE_IN_TRITS);
 
     private static boolean shuttingDown;
-    private static boolean triggered;
+    private static volatile boolean triggered;
 
     static final List<Hash> tips = new LinkedList<>(Collections.singleton(Hash.NULL_HASH));
+    static volatile long tipsVersion; // Changes whenever "tips" does
+
+    private static final boolean randomWalk = Configuration.coordinator() == null;
+    private static final Queue<Long> newTransactions = new ConcurrentLinkedQueue<>();
+
+    private static final int windowCapacity = Math.max(1, Configuration.tipsSelectionWindow());
+    private static final long[] window = new long[windowCapacity]; // Pointers of the latest transactions in the order they were added
+    private static final int[] cumulativeWeights = new int[windowCapacity]; // Count the transaction itself and its direct and indirect approvers within the window
+    private static final Map<Long, Integer> windowSlots = new HashMap<>();
+    private static int windowStart, windowSize;
+
+    private static final int[] visitStamps = new int[windowCapacity];
+    private static final int[] slotsQueue = new int[windowCapacity];
+    private static int visitStamp;
+
+    private static final int[] approveeSlots = new int[windowCapacity << 1]; // Trunk and branch slots, -1 for approvees outside the window, filled only while adding a late transaction
+    private static final int[] numbersOfPendingApprovers = new int[windowCapacity];
+    private static final int[] approverIndexes = new int[windowCapacity];
+
+    private static final double alpha = Configuration.tipsSelectionAlpha();
+    private static final int numberOfWalkers = Math.max(1, Configuration.tipsSelectionWalkers());
+    private static ExecutorService walkers;
 
     static void launch() {
 
         if (Configuration.coordinator() == null) { // Do Random walk Monte Carlo tip selection
 
+            walkers = Executors.newFixedThreadPool(numberOfWalkers, runnable -> {
+
+                final Thread thread = new Thread(runnable, "Tips Walker");
+                thread.setDaemon(true);
+
+                return thread;
+            });
+
             trigger();
 
             (new Thread(() -> {
 
+                seed();
+
                 while (!shuttingDown) {
 
                     try {
@@ -33,7 +65,37 @@ class TipsSelector {
 
                             triggered = false;
 
-                            throw new UnsupportedOperationException("Random walk Monte Carlo tip selection has not been implemented yet, please, add 'iri.coordinator' into the configuration file");
+                            Long pointer;
+                            while ((pointer = newTransactions.poll()) != null) {
+
+                                add(pointer);
+                            }
+
+                            final List<Hash> selectedTips = walk();
+                            synchronized (TipsSelector.class) {
+
+                                if (!tips.equals(selectedTips)) {
+
+                                    for (final Hash tip : tips) {
+
+                                        if (!selectedTips.contains(tip)) {
+
+                                            EventStream.tipRemoved(tip);
+                                        }
+                                    }
+                                    for (final Hash tip : selectedTips) {
+
+                                        if (!tips.contains(tip)) {
+
+                                            EventStream.tipAdded(tip);
+                                        }
+                                    }
+
+                                    tips.clear();
+                                    tips.addAll(selectedTips);
+                                    tipsVersion++;
+                                }
+                            }
 
                         } else {
 
@@ -58,7 +120,13 @@ class TipsSelector {
 
                         synchronized (TipsSelector.class) {
 
+                            for (final Hash tip : tips) {
+
+                                EventStream.tipRemoved(tip);
+                            }
+
                             tips.clear();
+                            tipsVersion++;
                         }
 
                         final Socket socket = new Socket(Configuration.coordinator(), Node.PORT + 1);
@@ -112,6 +180,9 @@ class TipsSelector {
                                             if (!tips.contains(hash)) {
 
                                                 tips.add(hash);
+                                                tipsVersion++;
+
+                                                EventStream.tipAdded(hash);
                                             }
 
                                             Storage.storeTransaction(hash.bytes, null, true);
@@ -120,7 +191,12 @@ class TipsSelector {
 
                                             System.out.println("-" + hash);
 
-                                            tips.remove(hash);
+                                            if (tips.remove(hash)) {
+
+                                                tipsVersion++;
+
+                                                EventStream.tipRemoved(hash);
+                                            }
                                         }
                                     }
                                 }
@@ -145,6 +221,11 @@ class TipsSelector {
     static void shutDown() {
 
         shuttingDown = true;
+
+        if (walkers != null) {
+
+            walkers.shutdownNow();
+        }
     }
 
     static void trigger() {
@@ -152,6 +233,16 @@ class TipsSelector {
         triggered = true;
     }
 
+    static void trigger(final long pointer) { // "pointer" belongs to a transaction which has just been stored
+
+        if (randomWalk) {
+
+            newTransactions.offer(pointer);
+        }
+
+        triggered = true;
+    }
+
     static synchronized Set<Hash> tips() {
 
         return new HashSet<>(tips);
@@ -161,4 +252,275 @@ class TipsSelector {
 
         return tips.get(ThreadLocalRandom.current().nextInt(tips.size()));
     }
+
+    private static void seed() { // Fills the window with the latest stored transactions
+
+        final Storage.TransactionView transaction = new Storage.TransactionView();
+        final long[] pointers = new long[windowCapacity];
+        int numberOfPointers = 0;
+        for (long pointer = Storage.transactionsNextPointer - Storage.CELL_SIZE; pointer >= Storage.CELLS_OFFSET - Storage.SUPER_GROUPS_OFFSET && numberOfPointers < windowCapacity; pointer -= Storage.CELL_SIZE) {
+
+            transaction.moveTo(pointer);
+            if (transaction.type() != Storage.GROUP && transaction.requestRating() == 0) {
+
+                pointers[numberOfPointers++] = pointer;
+            }
+        }
+
+        while (numberOfPointers-- > 0) { // Transactions which arrived late have lower pointers than their approvees, add() accounts for them
+
+            add(pointers[numberOfPointers]);
+        }
+    }
+
+    private static void add(final long pointer) {
+
+        if (windowSlots.containsKey(pointer)) {
+
+            return;
+        }
+
+        if (windowSize == windowCapacity) { // Only the oldest transaction is evicted, it can't have contributed to the weights of the others
+
+            windowSlots.remove(window[windowStart]);
+            windowStart = (windowStart + 1) % windowCapacity;
+            windowSize--;
+        }
+        final int slot = (windowStart + windowSize++) % windowCapacity;
+        window[slot] = pointer;
+        windowSlots.put(pointer, slot);
+
+        final List<Long> approvers = approvers(slot); // A transaction arriving after its approvers inherits them, its approvees gain them too unless they already had them
+        cumulativeWeights[slot] = 1 + approvers.size();
+        final long[][] countedApprovers = approvers.isEmpty() ? null : countedApprovers(slot, approvers);
+
+        final Storage.TransactionView transaction = new Storage.TransactionView();
+        visitStamp++;
+        int queueHead = 0, queueTail = 0;
+        slotsQueue[queueTail++] = slot;
+        visitStamps[slot] = visitStamp;
+        while (queueHead < queueTail) {
+
+            transaction.moveTo(window[slotsQueue[queueHead++]]);
+            for (int i = 0; i < 2; i++) {
+
+                final Integer approveeSlot = windowSlots.get(i == 0 ? transaction.approvedTrunkTransactionPointer() : transaction.approvedBranchTransactionPointer());
+                if (approveeSlot != null && visitStamps[approveeSlot] != visitStamp) {
+
+                    visitStamps[approveeSlot] = visitStamp;
+                    cumulativeWeights[approveeSlot] += 1 + approvers.size() - bitCount(countedApprovers == null ? null : countedApprovers[approveeSlot]);
+                    slotsQueue[queueTail++] = approveeSlot;
+                }
+            }
+        }
+    }
+
+    private static long[][] countedApprovers(final int slot, final List<Long> approvers) { // For every slot below "approvers" the bitset of those which reach it without passing through "slot"
+
+        final Storage.TransactionView transaction = new Storage.TransactionView();
+        visitStamp++;
+        visitStamps[slot] = visitStamp;
+        int queueHead = 0, queueTail = 0;
+        for (final long approverPointer : approvers) {
+
+            final int approverSlot = windowSlots.get(approverPointer);
+            visitStamps[approverSlot] = visitStamp;
+            slotsQueue[queueTail++] = approverSlot;
+        }
+        while (queueHead < queueTail) {
+
+            final int approverSlot = slotsQueue[queueHead++];
+            transaction.moveTo(window[approverSlot]);
+            for (int i = 0; i < 2; i++) {
+
+                final long approveePointer = i == 0 ? transaction.approvedTrunkTransactionPointer() : transaction.approvedBranchTransactionPointer();
+                final Integer approveeSlot = i == 1 && approveePointer == transaction.approvedTrunkTransactionPointer() ? null : windowSlots.get(approveePointer);
+                if (approveeSlot == null || approveeSlot == slot) {
+
+                    approveeSlots[(approverSlot << 1) + i] = -1;
+
+                } else {
+
+                    approveeSlots[(approverSlot << 1) + i] = approveeSlot;
+                    if (visitStamps[approveeSlot] != visitStamp) {
+
+                        visitStamps[approveeSlot] = visitStamp;
+                        slotsQueue[queueTail++] = approveeSlot;
+                    }
+                }
+            }
+        }
+
+        final long[][] countedApprovers = new long[windowCapacity][];
+        for (int i = 0; i < queueTail; i++) {
+
+            countedApprovers[slotsQueue[i]] = new long[(approvers.size() + 63) >> 6];
+            numbersOfPendingApprovers[slotsQueue[i]] = 0;
+            approverIndexes[slotsQueue[i]] = -1;
+        }
+        for (int i = 0; i < approvers.size(); i++) {
+
+            approverIndexes[windowSlots.get(approvers.get(i))] = i;
+        }
+        for (int i = 0; i < queueTail; i++) {
+
+            for (int j = 0; j < 2; j++) {
+
+                if (approveeSlots[(slotsQueue[i] << 1) + j] >= 0) {
+
+                    numbersOfPendingApprovers[approveeSlots[(slotsQueue[i] << 1) + j]]++;
+                }
+            }
+        }
+
+        final int[] readySlots = new int[queueTail]; // A slot passes its bits down only once all its approvers have passed theirs
+        int readyHead = 0, readyTail = 0;
+        for (int i = 0; i < queueTail; i++) {
+
+            if (numbersOfPendingApprovers[slotsQueue[i]] == 0) {
+
+                readySlots[readyTail++] = slotsQueue[i];
+            }
+        }
+        while (readyHead < readyTail) {
+
+            final int approverSlot = readySlots[readyHead++];
+            final long[] bits = countedApprovers[approverSlot];
+            for (int i = 0; i < 2; i++) {
+
+                final int approveeSlot = approveeSlots[(approverSlot << 1) + i];
+                if (approveeSlot >= 0) {
+
+                    final long[] approveeBits = countedApprovers[approveeSlot];
+                    for (int j = 0; j < bits.length; j++) {
+
+                        approveeBits[j] |= bits[j];
+                    }
+                    if (approverIndexes[approverSlot] >= 0) {
+
+                        approveeBits[approverIndexes[approverSlot] >> 6] |= 1L << approverIndexes[approverSlot];
+                    }
+
+                    if (--numbersOfPendingApprovers[approveeSlot] == 0) {
+
+                        readySlots[readyTail++] = approveeSlot;
+                    }
+                }
+            }
+        }
+
+        return countedApprovers;
+    }
+
+    private static int bitCount(final long[] bits) {
+
+        int bitCount = 0;
+        if (bits != null) {
+
+            for (final long word : bits) {
+
+                bitCount += Long.bitCount(word);
+            }
+        }
+
+        return bitCount;
+    }
+
+    private static List<Long> approvers(final int slot) { // Returns the direct and indirect approvers within the window
+
+        final List<Long> approvers = new ArrayList<>();
+        visitStamp++;
+        visitStamps[slot] = visitStamp;
+        int queueHead = 0, queueTail = 0;
+        slotsQueue[queueTail++] = slot;
+        while (queueHead < queueTail) {
+
+            for (final long approverPointer : Storage.approveeTransactions(window[slotsQueue[queueHead++]])) {
+
+                final Integer approverSlot = windowSlots.get(approverPointer);
+                if (approverSlot != null && visitStamps[approverSlot] != visitStamp) {
+
+                    visitStamps[approverSlot] = visitStamp;
+                    approvers.add(approverPointer);
+                    slotsQueue[queueTail++] = approverSlot;
+                }
+            }
+        }
+
+        return approvers;
+    }
+
+    private static List<Hash> walk() throws InterruptedException, ExecutionException {
+
+        if (windowSize == 0) {
+
+            return Collections.singletonList(Hash.NULL_HASH);
+        }
+
+        int entrySlot = windowStart; // Without milestones the walks start from the heaviest transaction of the window
+        for (int i = 1; i < windowSize; i++) {
+
+            final int slot = (windowStart + i) % windowCapacity;
+            if (cumulativeWeights[slot] > cumulativeWeights[entrySlot]) {
+
+                entrySlot = slot;
+            }
+        }
+        final long entryPointer = window[entrySlot];
+
+        final List<Callable<Long>> walks = new ArrayList<>(numberOfWalkers);
+        for (int i = 0; i < numberOfWalkers; i++) {
+
+            walks.add(() -> walk(entryPointer));
+        }
+
+        final Set<Hash> selectedTips = new LinkedHashSet<>();
+        final Storage.TransactionView transaction = new Storage.TransactionView();
+        final byte[] hash = new byte[Storage.Transaction.HASH_SIZE];
+        for (final Future<Long> tip : walkers.invokeAll(walks)) {
+
+            transaction.moveTo(tip.get()).hash(hash);
+            selectedTips.add(new Hash(hash, 0, Storage.Transaction.HASH_SIZE));
+        }
+
+        return new ArrayList<>(selectedTips);
+    }
+
+    private static long walk(long pointer) { // Moves to an approver with probability proportional to exp(alpha * (its weight - current weight)) until a tip is reached
+
+        final ThreadLocalRandom random = ThreadLocalRandom.current();
+        final List<Long> approvers = new ArrayList<>();
+        final List<Double> transitionWeights = new ArrayList<>();
+        while (true) {
+
+            final int cumulativeWeight = cumulativeWeights[windowSlots.get(pointer)];
+
+            approvers.clear();
+            transitionWeights.clear();
+            double sum = 0;
+            for (final long approverPointer : Storage.approveeTransactions(pointer)) {
+
+                final Integer approverSlot = windowSlots.get(approverPointer);
+                if (approverSlot != null) {
+
+                    final double transitionWeight = Math.exp(alpha * (cumulativeWeights[approverSlot] - cumulativeWeight));
+                    approvers.add(approverPointer);
+                    transitionWeights.add(transitionWeight);
+                    sum += transitionWeight;
+                }
+            }
+            if (approvers.isEmpty()) {
+
+                return pointer;
+            }
+
+            double target = random.nextDouble() * sum;
+            int i = 0;
+            while (i < approvers.size() - 1 && (target -= transitionWeights.get(i)) >= 0) {
+
+                i++;
+            }
+            pointer = approvers.get(i);
+        }
+    }
 }
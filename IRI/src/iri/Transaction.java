@@ -30,16 +30,13 @@ public class Transaction {
 
     public static final byte[] NULL_TRANSACTION_BYTES = new byte[SIZE_IN_BYTES];
 
-    public final int[] trits;
+    public final byte[] bytes; // The packed form, the trits are decoded only when needed
 
-    public final Hash digest;
-    public final Hash address;
     public final long value;
     public final long timestamp;
     public final long index;
-    public final Hash approvedTrunkTransaction;
-    public final Hash approvedBranchTransaction;
 
+    private Hash digest, address, approvedTrunkTransaction, approvedBranchTransaction; // Decoded on first use
     private Hash hash;
 
     private final int hashCode;
@@ -48,7 +45,7 @@ public class Transaction {
                 final Hash digest, final Hash address, final long value, final long timestamp, final long index, final int[] signatureNonce,
                 final int[] approvalNonce, final Hash approvedTrunkTransaction, final Hash approvedBranchTransaction) {
 
-        trits = new int[SIZE];
+        final int[] trits = new int[SIZE];
 
         System.arraycopy(signatureMessageChunk, 0, trits, SIGNATURE_MESSAGE_CHUNK_OFFSET, SIGNATURE_MESSAGE_CHUNK_SIZE);
         System.arraycopy(digest.trits(), 0, trits, DIGEST_OFFSET, DIGEST_SIZE);
@@ -61,6 +58,8 @@ public class Transaction {
         System.arraycopy(approvedTrunkTransaction.trits(), 0, trits, APPROVED_TRUNK_TRANSACTION_OFFSET, APPROVED_TRUNK_TRANSACTION_SIZE);
         System.arraycopy(approvedBranchTransaction.trits(), 0, trits, APPROVED_BRANCH_TRANSACTION_OFFSET, APPROVED_BRANCH_TRANSACTION_SIZE);
 
+        bytes = Converter.bytes(trits);
+
         this.digest = digest;
         this.address = address;
         this.value = value;
@@ -69,7 +68,7 @@ public class Transaction {
         this.approvedTrunkTransaction = approvedTrunkTransaction;
         this.approvedBranchTransaction = approvedBranchTransaction;
 
-        hashCode = Arrays.hashCode(trits);
+        hashCode = Arrays.hashCode(bytes);
     }
 
     Transaction(final Map<String, Object> object) {
@@ -82,40 +81,108 @@ public class Transaction {
         approvedTrunkTransaction = new Hash((String)object.get("approvedTrunkTransaction"));
         approvedBranchTransaction = new Hash((String)object.get("approvedBranchTransaction"));
 
-        trits = new int[SIZE];
+        final int[] trits = new int[SIZE];
 
-        System.arraycopy(Converter.trits((String)object.get("signatureMessageChunk")), 0, trits, SIGNATURE_MESSAGE_CHUNK_OFFSET, SIGNATURE_MESSAGE_CHUNK_SIZE);
+        Converter.trits((String)object.get("signatureMessageChunk"), 0, SIGNATURE_MESSAGE_CHUNK_SIZE / Converter.NUMBER_OF_TRITS_IN_A_TRYTE, trits, SIGNATURE_MESSAGE_CHUNK_OFFSET);
         System.arraycopy(digest.trits(), 0, trits, DIGEST_OFFSET, DIGEST_SIZE);
         System.arraycopy(address.trits(), 0, trits, ADDRESS_OFFSET, ADDRESS_SIZE);
         System.arraycopy(Converter.trits(value, VALUE_SIZE), 0, trits, VALUE_OFFSET, VALUE_SIZE);
         System.arraycopy(Converter.trits(timestamp, TIMESTAMP_SIZE), 0, trits, TIMESTAMP_OFFSET, TIMESTAMP_SIZE);
         System.arraycopy(Converter.trits(index, INDEX_SIZE), 0, trits, INDEX_OFFSET, INDEX_SIZE);
-        System.arraycopy(Converter.trits((String)object.get("signatureNonce")), 0, trits, SIGNATURE_NONCE_OFFSET, SIGNATURE_NONCE_SIZE);
-        System.arraycopy(Converter.trits((String)object.get("approvalNonce")), 0, trits, APPROVAL_NONCE_OFFSET, APPROVAL_NONCE_SIZE);
+        Converter.trits((String)object.get("signatureNonce"), 0, SIGNATURE_NONCE_SIZE / Converter.NUMBER_OF_TRITS_IN_A_TRYTE, trits, SIGNATURE_NONCE_OFFSET);
+        Converter.trits((String)object.get("approvalNonce"), 0, APPROVAL_NONCE_SIZE / Converter.NUMBER_OF_TRITS_IN_A_TRYTE, trits, APPROVAL_NONCE_OFFSET);
         System.arraycopy(approvedTrunkTransaction.trits(), 0, trits, APPROVED_TRUNK_TRANSACTION_OFFSET, APPROVED_TRUNK_TRANSACTION_SIZE);
         System.arraycopy(approvedBranchTransaction.trits(), 0, trits, APPROVED_BRANCH_TRANSACTION_OFFSET, APPROVED_BRANCH_TRANSACTION_SIZE);
 
-        hashCode = Arrays.hashCode(trits);
+        bytes = Converter.bytes(trits);
+
+        hashCode = Arrays.hashCode(bytes);
     }
 
     Transaction(final int[] trits) {
 
-        this.trits = Arrays.copyOf(trits, SIZE);
+        this(Converter.bytes(trits, 0, SIZE), null);
+    }
 
-        digest = new Hash(this.trits, DIGEST_OFFSET);
-        address = new Hash(this.trits, ADDRESS_OFFSET);
-        value = Converter.longValue(this.trits, VALUE_OFFSET, VALUE_SIZE);
-        timestamp = Converter.longValue(this.trits, TIMESTAMP_OFFSET, TIMESTAMP_SIZE);
-        index = Converter.longValue(this.trits, INDEX_OFFSET, INDEX_SIZE);
-        approvedTrunkTransaction = new Hash(this.trits, APPROVED_TRUNK_TRANSACTION_OFFSET);
-        approvedBranchTransaction = new Hash(this.trits, APPROVED_BRANCH_TRANSACTION_OFFSET);
+    Transaction(final byte[] bytes) {
 
-        hashCode = Arrays.hashCode(this.trits);
+        this(bytes, null);
     }
 
-    Transaction(final byte[] bytes) {
+    Transaction(final byte[] bytes, final Hash hash) { // Copies the first SIZE_IN_BYTES bytes, in a packet the last one also carries the first trits of the request; "hash" may be passed if already known
+
+        this.bytes = Arrays.copyOf(bytes, SIZE_IN_BYTES);
+        this.hash = hash;
+
+        final int[] lastTrit = new int[1];
+        Converter.trits(bytes, SIZE - 1, 1, lastTrit, 0);
+        this.bytes[SIZE_IN_BYTES - 1] = (byte)lastTrit[0];
+
+        final int[] trits = new int[VALUE_SIZE + TIMESTAMP_SIZE + INDEX_SIZE];
+        Converter.trits(this.bytes, VALUE_OFFSET, trits.length, trits, 0);
+        value = Converter.longValue(trits, 0, VALUE_SIZE);
+        timestamp = Converter.longValue(trits, VALUE_SIZE, TIMESTAMP_SIZE);
+        index = Converter.longValue(trits, VALUE_SIZE + TIMESTAMP_SIZE, INDEX_SIZE);
+
+        hashCode = Arrays.hashCode(this.bytes);
+    }
+
+    public int[] trits() { // A fresh copy, changing it doesn't affect the transaction
 
-        this(Converter.trits(bytes, SIZE));
+        return Converter.trits(bytes, SIZE);
+    }
+
+    void trits(final int offset, final int size, final int[] destination, final int destinationOffset) {
+
+        Converter.trits(bytes, offset, size, destination, destinationOffset);
+    }
+
+    Hash digest() {
+
+        if (digest == null) {
+
+            digest = hash(DIGEST_OFFSET);
+        }
+
+        return digest;
+    }
+
+    Hash address() {
+
+        if (address == null) {
+
+            address = hash(ADDRESS_OFFSET);
+        }
+
+        return address;
+    }
+
+    Hash approvedTrunkTransaction() {
+
+        if (approvedTrunkTransaction == null) {
+
+            approvedTrunkTransaction = hash(APPROVED_TRUNK_TRANSACTION_OFFSET);
+        }
+
+        return approvedTrunkTransaction;
+    }
+
+    Hash approvedBranchTransaction() {
+
+        if (approvedBranchTransaction == null) {
+
+            approvedBranchTransaction = hash(APPROVED_BRANCH_TRANSACTION_OFFSET);
+        }
+
+        return approvedBranchTransaction;
+    }
+
+    private Hash hash(final int offset) { // Hash is immutable, so racing threads at worst decode the same field twice
+
+        final int[] trits = new int[Bastard.HASH_SIZE];
+        Converter.trits(bytes, offset, Bastard.HASH_SIZE, trits, 0);
+
+        return new Hash(trits);
     }
 
     Hash hash() {
@@ -126,7 +193,7 @@ public class Transaction {
 
                 if (hash == null) {
 
-                    hash = Bastard.hash(trits, 0, SIZE);
+                    hash = Bastard.hash(trits(), 0, SIZE);
                 }
             }
         }
@@ -157,9 +224,11 @@ public class Transaction {
 
     int type() {
 
-        for (int i = SIGNATURE_NONCE_OFFSET; i < SIGNATURE_NONCE_OFFSET + SIGNATURE_NONCE_SIZE; i++) {
+        final int[] signatureNonce = new int[SIGNATURE_NONCE_SIZE];
+        trits(SIGNATURE_NONCE_OFFSET, SIGNATURE_NONCE_SIZE, signatureNonce, 0);
+        for (final int trit : signatureNonce) {
 
-            if (trits[i] != 0) {
+            if (trit != 0) {
 
                 return INPUT;
             }
@@ -171,7 +240,7 @@ public class Transaction {
     @Override
     public boolean equals(final Object obj) {
 
-        return Arrays.equals(trits, ((Transaction)obj).trits);
+        return Arrays.equals(bytes, ((Transaction)obj).bytes);
     }
 
     @Override
@@ -183,18 +252,20 @@ public class Transaction {
     @Override
     public String toString() {
 
+        final int[] trits = trits();
+
         return "\"hash\": \"" + hash() + "\""
                 + ", \"valid\": " + valid()
                 + ", \"type\": " + type()
                 + ", \"signatureMessageChunk\": \"" + Converter.trytes(trits, SIGNATURE_MESSAGE_CHUNK_OFFSET, SIGNATURE_MESSAGE_CHUNK_SIZE) + "\""
-                + ", \"digest\": \"" + digest + "\""
-                + ", \"address\": \"" + address + "\""
+                + ", \"digest\": \"" + digest() + "\""
+                + ", \"address\": \"" + address() + "\""
                 + ", \"value\": \"" + value + "\""
                 + ", \"timestamp\": \"" + timestamp + "\""
                 + ", \"index\": \"" + index + "\""
                 + ", \"signatureNonce\": \"" + Converter.trytes(trits, SIGNATURE_NONCE_OFFSET, SIGNATURE_NONCE_SIZE) + "\""
                 + ", \"approvalNonce\": \"" + Converter.trytes(trits, APPROVAL_NONCE_OFFSET, APPROVAL_NONCE_SIZE) + "\""
-                + ", \"approvedTrunkTransaction\": \"" + approvedTrunkTransaction + "\""
-                + ", \"approvedBranchTransaction\": \"" + approvedBranchTransaction + "\"";
+                + ", \"approvedTrunkTransaction\": \"" + approvedTrunkTransaction() + "\""
+                + ", \"approvedBranchTransaction\": \"" + approvedBranchTransaction() + "\"";
     }
 }
@@ -5,6 +5,53 @@ import java.util.concurrent.ThreadLocalRandom;
 
 public class Utils {
 
+    private static final int ADDRESSES_CACHE_CAPACITY = Math.max(1, Configuration.addressesCacheCapacity());
+
+    private static final Map<AddressKey, Hash> addressesCache = new LinkedHashMap<AddressKey, Hash>(16, 0.75f, true) { // Least recently used addresses are evicted first
+
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<AddressKey, Hash> eldest) {
+
+            return size() > ADDRESSES_CACHE_CAPACITY;
+        }
+    };
+    private static final Map<AddressKey, Integer> numbersOfUsedAddresses = new LinkedHashMap<AddressKey, Integer>(16, 0.75f, true) { // Keyed with index 0, guarded by "addressesCache" too
+
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<AddressKey, Integer> eldest) {
+
+            return size() > ADDRESSES_CACHE_CAPACITY;
+        }
+    };
+
+    static final class AddressKey {
+
+        final Hash fingerprint;
+        final int securityLevel;
+        final int index;
+
+        AddressKey(final Hash fingerprint, final int securityLevel, final int index) {
+
+            this.fingerprint = fingerprint;
+            this.securityLevel = securityLevel;
+            this.index = index;
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+
+            final AddressKey key = (AddressKey)obj;
+
+            return index == key.index && securityLevel == key.securityLevel && fingerprint.equals(key.fingerprint);
+        }
+
+        @Override
+        public int hashCode() {
+
+            return (fingerprint.hashCode() * 31 + securityLevel) * 31 + index;
+        }
+    }
+
     static class RawTransaction {
 
         final int[] signatureMessageChunk;
@@ -291,7 +338,7 @@ public class Utils {
                     rawTransaction.value, rawTransaction.timestamp, rawTransaction.index,
                     rawTransaction.signatureNonce, new int[Transaction.APPROVAL_NONCE_SIZE],
                     prevTransaction == null ? approvedTrunkTransaction : prevTransaction,
-                    prevTransaction == null ? approvedBranchTransaction : approvedTrunkTransaction)).trits;
+                    prevTransaction == null ? approvedBranchTransaction : approvedTrunkTransaction)).trits();
 
             ProofOfWorkGenerator.doWork(transactionTrits, minWeightMagnitude);
 
@@ -314,26 +361,10 @@ public class Utils {
 
         for (final Map.Entry<Hash, Integer> addressEntry : addresses(seed, securityLevel).entrySet()) {
 
-            sourcesValues.put(addressEntry.getKey(), 0L);
+            sourcesValues.put(addressEntry.getKey(), Storage.balance(addressEntry.getKey().bytes));
             sourcesIndices.put(addressEntry.getKey(), addressEntry.getValue());
         }
 
-        final Set<Hash> includedTransactions = new HashSet<>();
-        Tangle.getIncludedTransactions(includedTransactions);
-        for (final Hash hash : includedTransactions) {
-
-            final Storage.Transaction transaction = Storage.loadTransaction(hash.bytes);
-            if (transaction != null) {
-
-                final Hash address = new Hash(transaction.address);
-                final Long prevValue = sourcesValues.get(address);
-                if (prevValue != null) {
-
-                    sourcesValues.put(address, prevValue + transaction.value);
-                }
-            }
-        }
-
         long totalValue = 0;
         final Map<Hash, Long> usedSources = new HashMap<>();
 
@@ -361,7 +392,7 @@ public class Utils {
         bundleEntries.add(new BundleEntry(new int[Transaction.SIGNATURE_MESSAGE_CHUNK_SIZE], destination, valueToTransfer, timestamp));
         if (valueToTransfer < totalValue) {
 
-            bundleEntries.add(new BundleEntry(new int[Transaction.SIGNATURE_MESSAGE_CHUNK_SIZE], Signature.address(Signature.publicKey(Signature.privateKey(Signature.subseed(seed.trits(), newAddressIndex(seed, securityLevel)), securityLevel))), totalValue - valueToTransfer, timestamp));
+            bundleEntries.add(new BundleEntry(new int[Transaction.SIGNATURE_MESSAGE_CHUNK_SIZE], address(seed, securityLevel, newAddressIndex(seed, securityLevel)), totalValue - valueToTransfer, timestamp));
         }
 
         for (final Map.Entry<Hash, Long> usedSource : usedSources.entrySet()) {
@@ -370,26 +401,28 @@ public class Utils {
         }
 
         final Transaction[] transactions = generateBundle(bundleEntries, null, null, minWeightMagnitude);
+        final List<byte[]> bundle = new ArrayList<>(transactions.length);
         for (int i = transactions.length; i-- > 0; ) { // Broadcast from the head to the tail
 
-            Broadcaster.push(Converter.bytes(transactions[i].trits));
+            bundle.add(transactions[i].bytes);
         }
+        Broadcaster.push(bundle);
 
         return true;
     }
 
     public static Map<Hash, Integer> addresses(final Hash seed, final int securityLevel) {
 
+        final Hash fingerprint = fingerprint(seed);
+        final int[] seedTrits = seed.trits();
+        final int numberOfKnownUsedAddresses = numberOfUsedAddresses(fingerprint, securityLevel);
+
         final Map<Hash, Integer> addresses = new HashMap<>();
 
         for (int i = 0; i < Integer.MAX_VALUE; i++) {
 
-            final int[] subseed = Signature.subseed(seed.trits(), i);
-            final int[][] privateKey = Signature.privateKey(subseed, securityLevel);
-            final int[] publicKey = Signature.publicKey(privateKey);
-            final Hash address = Signature.address(publicKey);
-
-            if (Storage.addressPointer(address.bytes) != 0) {
+            final Hash address = address(seedTrits, fingerprint, securityLevel, i);
+            if (i < numberOfKnownUsedAddresses || Storage.addressPointer(address.bytes) != 0) { // A used address never becomes unused
 
                 addresses.put(address, i);
 
@@ -399,19 +432,21 @@ public class Utils {
             }
         }
 
+        setNumberOfUsedAddresses(fingerprint, securityLevel, addresses.size());
+
         return addresses;
     }
 
     public static int newAddressIndex(final Hash seed, final int securityLevel) {
 
-        for (int i = 0; i < Integer.MAX_VALUE; i++) {
+        final Hash fingerprint = fingerprint(seed);
+        final int[] seedTrits = seed.trits();
 
-            final int[] subseed = Signature.subseed(seed.trits(), i);
-            final int[][] privateKey = Signature.privateKey(subseed, securityLevel);
-            final int[] publicKey = Signature.publicKey(privateKey);
-            final Hash address = Signature.address(publicKey);
+        for (int i = numberOfUsedAddresses(fingerprint, securityLevel); i < Integer.MAX_VALUE; i++) {
 
-            if (Storage.addressPointer(address.bytes) == 0) {
+            if (Storage.addressPointer(address(seedTrits, fingerprint, securityLevel, i).bytes) == 0) {
+
+                setNumberOfUsedAddresses(fingerprint, securityLevel, i);
 
                 return i;
             }
@@ -420,6 +455,54 @@ public class Utils {
         return -1;
     }
 
+    public static Hash address(final Hash seed, final int securityLevel, final int index) {
+
+        return address(seed.trits(), fingerprint(seed), securityLevel, index);
+    }
+
+    private static Hash address(final int[] seed, final Hash fingerprint, final int securityLevel, final int index) {
+
+        final AddressKey key = new AddressKey(fingerprint, securityLevel, index);
+        Hash address;
+        synchronized (addressesCache) {
+
+            address = addressesCache.get(key);
+        }
+        if (address == null) {
+
+            address = Signature.address(Signature.publicKey(Signature.privateKey(Signature.subseed(seed, index), securityLevel)));
+            synchronized (addressesCache) {
+
+                addressesCache.put(key, address);
+            }
+        }
+
+        return address;
+    }
+
+    private static Hash fingerprint(final Hash seed) { // The hash of the seed is the 0th subseed, so it's hashed once more to keep key material out of the caches
+
+        return Bastard.hash(Bastard.hash(seed.trits(), 0, Bastard.HASH_SIZE).trits(), 0, Bastard.HASH_SIZE);
+    }
+
+    private static int numberOfUsedAddresses(final Hash fingerprint, final int securityLevel) {
+
+        synchronized (addressesCache) {
+
+            final Integer numberOfUsedAddresses = numbersOfUsedAddresses.get(new AddressKey(fingerprint, securityLevel, 0));
+
+            return numberOfUsedAddresses == null ? 0 : numberOfUsedAddresses;
+        }
+    }
+
+    private static void setNumberOfUsedAddresses(final Hash fingerprint, final int securityLevel, final int numberOfUsedAddresses) {
+
+        synchronized (addressesCache) {
+
+            numbersOfUsedAddresses.merge(new AddressKey(fingerprint, securityLevel, 0), numberOfUsedAddresses, Math::max);
+        }
+    }
+
     public static int randomTrit() {
 
         return ThreadLocalRandom.current().nextInt(Converter.RADIX) - 1;